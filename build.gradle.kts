@@ -28,16 +28,18 @@ dependencies {
 }
 
 val enableNativeAccess = "--enable-native-access=syspro.tm.RegexApp"
+// Optional at run time, ByteScanner tests bytes one at a time without it
+val addVectorModule = "--add-modules=jdk.incubator.vector"
 
 tasks.test {
     useJUnitPlatform()
-    jvmArgs(enableNativeAccess)
+    jvmArgs(enableNativeAccess, addVectorModule)
 }
 
 application {
     mainModule = "syspro.tm.RegexApp"
     mainClass = "syspro.tm.Main"
-    applicationDefaultJvmArgs += listOf(enableNativeAccess)
+    applicationDefaultJvmArgs += listOf(enableNativeAccess, addVectorModule)
 }
 
 if (rootProject.hasProperty("syspro.tm.repository.url")) {
@@ -1,11 +1,22 @@
 import syspro.tm.*;
+import syspro.tm.engine.BacktrackRegexEngine;
+import syspro.tm.engine.BytecodeRegexEngine;
+import syspro.tm.engine.FullDfaRegexEngine;
+import syspro.tm.engine.GlushkovRegexEngine;
+import syspro.tm.engine.LazyDfaRegexEngine;
+import syspro.tm.engine.NativeRegexEngine;
+import syspro.tm.engine.PikeVmRegexEngine;
+import syspro.tm.engine.TieredRegexEngine;
 
 module syspro.tm.RegexApp {
     requires org.apache.commons.io;
+    requires static jdk.incubator.vector;
     uses RegexEngine;
     uses ConfigurationProvider;
     provides ConfigurationProvider with DefaultTestCases;
+    provides RegexEngine with PikeVmRegexEngine, LazyDfaRegexEngine, FullDfaRegexEngine, GlushkovRegexEngine, BytecodeRegexEngine, NativeRegexEngine, BacktrackRegexEngine, TieredRegexEngine;
     exports syspro.tm;
+    exports syspro.tm.engine;
     exports syspro.tm.jit;
     exports syspro.tm.regex;
 }
\ No newline at end of file
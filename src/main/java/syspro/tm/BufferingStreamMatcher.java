@@ -0,0 +1,36 @@
+package syspro.tm;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fallback {@link StreamMatcher} for engines that can only match a complete input: collects all chunks
+ * and matches them at {@link #finish()}.
+ */
+final class BufferingStreamMatcher implements StreamMatcher {
+    private final CompiledRegex regex;
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    BufferingStreamMatcher(CompiledRegex regex) {
+        this.regex = regex;
+    }
+
+    @Override
+    public Status feed(ByteBuffer chunk) {
+        final var remaining = chunk.remaining();
+        if (buffer.length - length < remaining) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, Math.addExact(length, remaining)));
+        }
+        chunk.get(buffer, length, remaining);
+        length += remaining;
+        return Status.UNDECIDED;
+    }
+
+    @Override
+    public boolean finish() {
+        final var result = regex.matches(Arrays.copyOf(buffer, length));
+        length = 0;
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+package syspro.tm;
+
+import java.util.BitSet;
+
+/**
+ * A regex compiled once by {@link RegexEngine#compile}, reusable for any number of inputs.
+ * Implementations must be safe to use from multiple threads at once.
+ */
+@FunctionalInterface
+public interface CompiledRegex {
+    /**
+     * Match the compiled regex against the entire given input,
+     * or search for it anywhere in the input if it has been compiled by {@link RegexEngine#compileSearch}.
+     */
+    boolean matches(byte[] input);
+
+    /**
+     * @return New matcher for an input that arrives in chunks. The default implementation buffers the chunks
+     * and calls {@link #matches(byte[])} at the end, engines that can carry their state across chunks override it.
+     */
+    default StreamMatcher streamMatcher() {
+        return new BufferingStreamMatcher(this);
+    }
+
+    /**
+     * Matches every record of the batch, setting the bits of the matching records in {@code results}
+     * and clearing the bits of the others. The default implementation copies every record and calls
+     * {@link #matches(byte[])}, engines override it to match the records in place or all of them in a single call.
+     *
+     * @param results Bitmap of at least {@link RecordBatch#bitmapLength()} words
+     * @return Number of matching records
+     */
+    default int matchBatch(RecordBatch batch, long[] results) {
+        batch.clearBitmap(results);
+        final var size = batch.size();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (matches(batch.record(i))) {
+                results[i / Long.SIZE] |= 1L << i;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Matches every window {@code input[i * windowSize, (i + 1) * windowSize)} like a record of
+     * {@link RecordBatch#windows}, the last window may be shorter. The default implementation calls
+     * {@link #matchBatch(RecordBatch, long[])}, engines override it to match all windows without an offsets array.
+     *
+     * @param results Bitmap of at least {@link RecordBatch#bitmapLength(int)} words for {@link RecordBatch#windowCount} windows
+     * @return Number of matching windows
+     */
+    default int matchWindows(byte[] input, int windowSize, long[] results) {
+        return matchBatch(RecordBatch.windows(input, windowSize), results);
+    }
+
+    /**
+     * @return Engines this regex has moved through so far, for engines that promote hot regexes to faster ones,
+     * the engine picked for it by engines that fall back to another one, or {@code null} if there is no choice
+     */
+    default String tierHistory() {
+        return null;
+    }
+
+    /**
+     * @return Indices of the matching records of the batch, see {@link #matchBatch(RecordBatch, long[])}
+     */
+    default BitSet matchBatch(RecordBatch batch) {
+        final var results = new long[batch.bitmapLength()];
+        matchBatch(batch, results);
+        return BitSet.valueOf(results);
+    }
+}
@@ -0,0 +1,345 @@
+package syspro.tm;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bounded concurrent cache of compiled regexes, keyed by the regex bytes rather than array identity.
+ * <p>
+ * Eviction follows W-TinyLFU: new entries enter a small LRU window, and an entry leaving the window
+ * is admitted to the main segmented LRU only if it has been requested more often than the main region's victim,
+ * according to an approximate frequency sketch. One-off regexes therefore cannot flush frequently used ones.
+ * <p>
+ * Lookups never block; bookkeeping of a hit is skipped if another thread holds the policy lock.
+ *
+ * @param <V> Compiled form of a regex
+ */
+public final class CompiledRegexCache<V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final int maximumSize;
+    private final int windowCapacity;
+    private final int protectedCapacity;
+    private final Function<? super byte[], ? extends V> compiler;
+    private final ConcurrentHashMap<Key, Node<V>> map = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    @SuppressWarnings("unchecked")
+    private final Node<V>[] heads = new Node[3];
+    private final int[] sizes = new int[3];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumSize Maximum number of cached regexes
+     * @param compiler    Compiles a regex on a cache miss, receives a private copy of the regex bytes
+     */
+    public CompiledRegexCache(int maximumSize, Function<? super byte[], ? extends V> compiler) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size should be positive: " + maximumSize);
+        }
+        if (compiler == null) {
+            throw new IllegalArgumentException("Compiler should be non-null");
+        }
+
+        this.maximumSize = maximumSize;
+        this.windowCapacity = Math.max(1, maximumSize / 100);
+        this.protectedCapacity = (maximumSize - windowCapacity) * 4 / 5;
+        this.compiler = compiler;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * @return {@link RegexEngine} that compiles every distinct regex once with {@code compiler}
+     * and matches inputs with the cached predicate
+     */
+    public static RegexEngine cachingEngine(int maximumSize, Function<? super byte[], ? extends Predicate<byte[]>> compiler) {
+        final var cache = new CompiledRegexCache<Predicate<byte[]>>(maximumSize, compiler);
+        return (regex, input) -> cache.get(regex).test(input);
+    }
+
+    /**
+     * @return Cached compiled form of the regex, compiling it if absent
+     */
+    public V get(byte[] regex) {
+        final var lookupKey = new Key(regex);
+        final var node = map.get(lookupKey);
+        if (node != null) {
+            hits.increment();
+            if (lock.tryLock()) {
+                try {
+                    onHit(node);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return node.value;
+        }
+
+        misses.increment();
+        final var key = new Key(regex.clone());
+        final var created = new Node<V>(key, compiler.apply(key.bytes));
+        final var existing = map.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing.value;
+        }
+        lock.lock();
+        try {
+            // A clear() since the insertion has removed the entry, linking it would leave it in a region for good
+            if (map.get(key) == created) {
+                onInsert(created);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return created.value;
+    }
+
+    /**
+     * @return Cached compiled form of the regex, or {@code null} without compiling it if absent
+     */
+    public V getIfPresent(byte[] regex) {
+        final var node = map.get(new Key(regex));
+        if (node == null) {
+            return null;
+        }
+        hits.increment();
+        if (lock.tryLock()) {
+            try {
+                onHit(node);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Removes all entries, statistics are kept.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            for (final var node : map.values()) {
+                node.region = -1;
+            }
+            map.clear();
+            Arrays.fill(heads, null);
+            Arrays.fill(sizes, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledRegexCache[size=" + size() + ", hits=" + hitCount() + ", misses=" + missCount() + ", evictions=" + evictionCount() + ']';
+    }
+
+    private void onHit(Node<V> node) {
+        if (node.region < 0) {
+            // Not linked yet or already evicted
+            return;
+        }
+        sketch.increment(node.key.hash);
+        if (node.region == PROBATION) {
+            unlink(node);
+            linkFirst(node, PROTECTED);
+            if (sizes[PROTECTED] > protectedCapacity) {
+                final var demoted = last(PROTECTED);
+                unlink(demoted);
+                linkFirst(demoted, PROBATION);
+            }
+        } else {
+            unlink(node);
+            linkFirst(node, node.region);
+        }
+    }
+
+    private void onInsert(Node<V> node) {
+        sketch.increment(node.key.hash);
+        linkFirst(node, WINDOW);
+        if (sizes[WINDOW] <= windowCapacity) {
+            return;
+        }
+
+        final var candidate = last(WINDOW);
+        unlink(candidate);
+        linkFirst(candidate, PROBATION);
+        if (sizes[PROBATION] + sizes[PROTECTED] <= maximumSize - windowCapacity) {
+            return;
+        }
+
+        if (sizes[PROBATION] == 1) {
+            // The candidate is alone on probation
+            evict(sizes[PROTECTED] != 0 ? last(PROTECTED) : candidate);
+            return;
+        }
+        // Admission: the more frequently requested of the candidate and the probation victim survives
+        final var victim = last(PROBATION);
+        if (sketch.frequency(candidate.key.hash) > sketch.frequency(victim.key.hash)) {
+            evict(victim);
+        } else {
+            evict(candidate);
+        }
+    }
+
+    private void evict(Node<V> node) {
+        unlink(node);
+        node.region = -1;
+        map.remove(node.key, node);
+        evictions.increment();
+    }
+
+    private Node<V> last(int region) {
+        return heads[region].previous;
+    }
+
+    /**
+     * Regions are circular doubly linked lists, most recently used first.
+     */
+    private void linkFirst(Node<V> node, int region) {
+        final var head = heads[region];
+        if (head == null) {
+            node.next = node;
+            node.previous = node;
+        } else {
+            node.next = head;
+            node.previous = head.previous;
+            head.previous.next = node;
+            head.previous = node;
+        }
+        heads[region] = node;
+        node.region = region;
+        sizes[region]++;
+    }
+
+    private void unlink(Node<V> node) {
+        final var region = node.region;
+        if (node.next == node) {
+            heads[region] = null;
+        } else {
+            node.previous.next = node.next;
+            node.next.previous = node.previous;
+            if (heads[region] == node) {
+                heads[region] = node.next;
+            }
+        }
+        node.next = null;
+        node.previous = null;
+        sizes[region]--;
+    }
+
+    private static final class Key {
+        final byte[] bytes;
+        final int hash;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key that && hash == that.hash && Arrays.equals(bytes, that.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Node<V> {
+        final Key key;
+        final V value;
+        int region;
+        Node<V> previous;
+        Node<V> next;
+
+        Node(Key key, V value) {
+            this.key = key;
+            this.value = value;
+            this.region = -1;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters with periodic halving, so that old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97CB3127, 0xB492B66F, 0x9AE16A3B, 0xC2B2AE35};
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            // 16 counters per entry keep collisions rare
+            final var entries = Integer.highestOneBit(Math.clamp(maximumSize, 16, 1 << 22) - 1) << 1;
+            counters = new byte[16 * entries];
+            mask = counters.length - 1;
+            sampleSize = 10 * entries;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (final var seed : SEEDS) {
+                final var index = index(hash, seed);
+                if (counters[index] < MAX_COUNT) {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int result = MAX_COUNT;
+            for (final var seed : SEEDS) {
+                result = Math.min(result, counters[index(hash, seed)]);
+            }
+            return result;
+        }
+
+        private int index(int hash, int seed) {
+            var h = hash * seed;
+            h ^= h >>> 17;
+            return h & mask;
+        }
+    }
+}
@@ -124,12 +124,53 @@ public final class Configuration {
         @Override
         public void add(byte[] regex, byte[] input, boolean expected) {
             final var isBenchmark = currentGroup != null && currentGroup.isBenchmark;
-            result.add(new TestData(currentProvider(), regex.clone(), input.clone(), expected, isBenchmark, null));
+            result.add(new TestData(currentProvider(), regex.clone(), input.clone(), expected, isBenchmark, isSearch(), null, null, null, null));
         }
 
         @Override
         public void addSlidingWindowBenchmark(byte[] regex, byte[] input, int inputWindow) {
-            result.add(new TestData(currentProvider(), regex.clone(), input.clone(), true, true, inputWindow));
+            result.add(new TestData(currentProvider(), regex.clone(), input.clone(), true, true, isSearch(), inputWindow, null, null, null));
+        }
+
+        @Override
+        public void addStreamingSlidingWindowBenchmark(byte[] regex, byte[] input, int inputWindow, int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size should be positive: " + chunkSize);
+            }
+            result.add(new TestData(currentProvider(), regex.clone(), input.clone(), true, true, isSearch(), inputWindow, chunkSize, null, null));
+        }
+
+        @Override
+        public void addRegexSetSlidingWindowBenchmark(byte[][] regexes, byte[] input, int inputWindow) {
+            if (regexes.length == 0) {
+                throw new IllegalArgumentException("Regex set should be non-empty");
+            }
+            if (isSearch()) {
+                throw new IllegalStateException("Regex sets are not supported in search groups");
+            }
+            final var copy = new byte[regexes.length][];
+            for (int i = 0; i < regexes.length; i++) {
+                copy[i] = regexes[i].clone();
+            }
+            result.add(new TestData(currentProvider(), copy[0], input.clone(), true, true, false, inputWindow, null, copy, null));
+        }
+
+        @Override
+        public void addBatchBenchmark(byte[] regex, byte[] input, int recordSize, int batchSize) {
+            if (recordSize <= 0) {
+                throw new IllegalArgumentException("Record size should be positive: " + recordSize);
+            }
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("Batch size should be positive: " + batchSize);
+            }
+            if (input.length == 0) {
+                throw new IllegalArgumentException("Batch benchmark input should be non-empty");
+            }
+            result.add(new TestData(currentProvider(), regex.clone(), input.clone(), true, true, isSearch(), recordSize, null, null, batchSize));
+        }
+
+        private boolean isSearch() {
+            return currentGroup != null && currentGroup.isSearch;
         }
 
         private ConfigurationProvider currentProvider() {
@@ -1,5 +1,6 @@
 package syspro.tm;
 
+import java.nio.file.Path;
 import java.util.List;
 
 public interface ConfigurationProvider {
@@ -29,6 +30,13 @@ public interface ConfigurationProvider {
         return null;
     }
 
+    /**
+     * Adjusts the options of {@literal cl.exe} before a native library is compiled.
+     * The compiler runs in a private working directory, so the source file is passed by its relative name
+     * ({@literal "regex.cpp"} with the quotes) rather than an absolute path, and the library is written next to it.
+     * The adjusted options are part of the {@link #nativeLibraryCacheDirectory() library cache} key,
+     * so they should not contain paths that change from run to run.
+     */
     default void adjustMicrosoftCompilerOptions(String compilerPath, List<String> compilerOptions) {
     }
 
@@ -43,6 +51,53 @@ public interface ConfigurationProvider {
         return null;
     }
 
+    /**
+     * Adjusts the options of the Unix compiler before a native library is compiled.
+     * The compiler runs in a private working directory, so the source file ({@literal regex.cpp}) and the output
+     * ({@literal -o regex.so}, or {@literal regex.dylib} on macOS) are relative names rather than absolute paths.
+     * The adjusted options are part of the {@link #nativeLibraryCacheDirectory() library cache} key,
+     * so they should not contain paths that change from run to run.
+     */
     default void adjustUnixCompilerOptions(String compilerPath, List<String> compilerOptions) {
     }
+
+    /**
+     * @return Directory where compiled native libraries are kept across runs, {@code null} for a directory
+     * in {@code $XDG_CACHE_HOME} or {@code ~/.cache}. It should belong to the current user and be writable by nobody else
+     */
+    default Path nativeLibraryCacheDirectory() {
+        return null;
+    }
+
+    /**
+     * @return Total size of the cached native libraries in bytes before the least recently used ones are deleted,
+     * 0 for the default of 256 MiB
+     */
+    default long nativeLibraryCacheSizeLimit() {
+        return 0;
+    }
+
+    /**
+     * @return Calls of a pattern before {@link syspro.tm.engine.TieredRegexEngine} moves it from the Pike VM
+     * to the lazy DFA, 0 for the default
+     */
+    default long tieredLazyDfaCalls() {
+        return 0;
+    }
+
+    /**
+     * @return Calls of a pattern before {@link syspro.tm.engine.TieredRegexEngine} moves it to the compiled tier,
+     * 0 for the default
+     */
+    default long tieredCompiledCalls() {
+        return 0;
+    }
+
+    /**
+     * @return Input bytes matched by a pattern before {@link syspro.tm.engine.TieredRegexEngine} moves it
+     * to the compiled tier, 0 for the default
+     */
+    default long tieredCompiledBytes() {
+        return 0;
+    }
 }
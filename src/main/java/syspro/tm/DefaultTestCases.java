@@ -3,6 +3,7 @@ package syspro.tm;
 import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
+import java.util.LinkedHashSet;
 
 public final class DefaultTestCases implements ConfigurationProvider {
     @Override
@@ -149,6 +150,19 @@ public final class DefaultTestCases implements ConfigurationProvider {
         builder.add("a\0c", "a\0c", true);
         builder.add("a\0c", "a\0d", false);
 
+        try (var _ = builder.searchGroup()) {
+            builder.add("[a]|[b-b]", "", false);
+            builder.add("[a]|[b-b]", " aa", true);
+            builder.add("[a]|[b-b]", "cdc", false);
+            builder.add("([a]|[b-b])*", "cdc", true);
+            builder.add("ab+c", "xabbbcx", true);
+            builder.add("ab+c", "xabbbxc", false);
+            builder.add("a{3}", "aabaab", false);
+            builder.add("a{3}", "aabaaab", true);
+            builder.add("Sherlock\\s+Holmes", "Mr. Sherlock \n Holmes", true);
+            builder.add("Sherlock\\s+Holmes", "Mr. Sherlock Holme", false);
+        }
+
         try (var _ = builder.benchmarkGroup()) {
             builder.add("(a?){20}a{20}", "aaaaaaaaaaaaaaaaaaaa", true);
             builder.add("(a+)+", "aaaaaaaaaaaaaaaaaaaaaaaaaaa", true);
@@ -157,6 +171,9 @@ public final class DefaultTestCases implements ConfigurationProvider {
             builder.add("[0-9a-zA-Z]([-.\\w]*[0-9a-zA-Z])?@.*", "test@contoso.com", true);
             builder.add("(([A-Z]\\w*)+\\.)*[A-Z]\\w*", "aaaaaaaaaaaaaaaaaaaaaa.", false);
             builder.add(".*(es).*", "Essential services are provided by regular expressions.", true);
+            try (var _ = builder.searchGroup()) {
+                builder.add("es", "Essential services are provided by regular expressions.", true);
+            }
         }
 
         final var sherlock = loadSherlockBytes();
@@ -165,6 +182,47 @@ public final class DefaultTestCases implements ConfigurationProvider {
         builder.addSlidingWindowBenchmark(Utils.toBytes(".*(Holmes.{0,25}Watson|Watson.{0,25}Holmes).*"), sherlock, 40);
         builder.addSlidingWindowBenchmark(Utils.toBytes(".*[a-zA-Z]+ing.*"), sherlock, 40);
         builder.addSlidingWindowBenchmark(Utils.toBytes(".*\\s[a-zA-Z]{0,12}ing\\s.*"), sherlock, 40);
+        builder.addStreamingSlidingWindowBenchmark(Utils.toBytes(".*Sherlock Holmes.*"), sherlock, 40, 8);
+        builder.addStreamingSlidingWindowBenchmark(Utils.toBytes(".*\\s[a-zA-Z]{0,12}ing\\s.*"), sherlock, 40, 8);
+        for (final var count : new int[]{1, 16, 256}) {
+            builder.addRegexSetSlidingWindowBenchmark(wordRegexes(sherlock, count), sherlock, 40);
+        }
+        for (final var batchSize : new int[]{1, 64, 4096, 1 << 20}) {
+            builder.addBatchBenchmark(Utils.toBytes(".*Sherlock Holmes.*"), sherlock, 40, batchSize);
+        }
+
+        // The same windows searched without the surrounding .*
+        try (var _ = builder.searchGroup()) {
+            builder.addSlidingWindowBenchmark(Utils.toBytes("Sherlock Holmes"), sherlock, 40);
+            builder.addSlidingWindowBenchmark(Utils.toBytes("Sherlock\\s+Holmes"), sherlock, 40);
+            builder.addSlidingWindowBenchmark(Utils.toBytes("Holmes.{0,25}Watson|Watson.{0,25}Holmes"), sherlock, 40);
+            builder.addSlidingWindowBenchmark(Utils.toBytes("[a-zA-Z]+ing"), sherlock, 40);
+            builder.addSlidingWindowBenchmark(Utils.toBytes("\\s[a-zA-Z]{0,12}ing\\s"), sherlock, 40);
+            builder.addStreamingSlidingWindowBenchmark(Utils.toBytes("Sherlock Holmes"), sherlock, 40, 8);
+        }
+    }
+
+    /**
+     * @return Regexes {@code .*word.*} for the first {@code count} distinct words of at least 6 letters in the text
+     */
+    private static byte[][] wordRegexes(byte[] text, int count) {
+        final var words = new LinkedHashSet<String>();
+        final var word = new StringBuilder();
+        for (int i = 0; i <= text.length && words.size() < count; i++) {
+            final var c = i < text.length ? (char) Byte.toUnsignedInt(text[i]) : ' ';
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                word.append(c);
+                continue;
+            }
+            if (word.length() >= 6) {
+                words.add(word.toString());
+            }
+            word.setLength(0);
+        }
+        if (words.size() < count) {
+            throw new IllegalArgumentException("Text has only " + words.size() + " distinct words");
+        }
+        return words.stream().map(w -> Utils.toBytes(".*" + w + ".*")).toArray(byte[][]::new);
     }
 
     public static byte[] loadSherlockBytes() {
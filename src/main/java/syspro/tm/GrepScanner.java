@@ -0,0 +1,180 @@
+package syspro.tm;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the lines of a file that contain a match of a regex, like {@code grep -c}.
+ * The file is memory-mapped and split into ranges of whole lines that are scanned in parallel with fork/join.
+ * Every line is fed to a {@link StreamMatcher} straight from the mapping, so engines with a streaming mode never copy it.
+ */
+public final class GrepScanner {
+    /**
+     * Ranges of at most that many bytes are scanned by a single task.
+     */
+    private static final long SPLIT_THRESHOLD = 1 << 20;
+    /**
+     * Largest part of the mapping that is viewed as a single {@link java.nio.ByteBuffer}.
+     */
+    private static final long MAX_WINDOW = 1 << 30;
+
+    private GrepScanner() {
+    }
+
+    /**
+     * @param regex          Regex compiled by {@link RegexEngine#compileSearch}, lines are matched without their {@code \n}
+     * @param collectOffsets Whether {@link Result#offsets} should be filled in
+     */
+    public static Result scan(CompiledRegex regex, Path file, boolean collectOffsets) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ); var arena = Arena.ofShared()) {
+            final var segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            // Leaves never fork, so a worker uses its matcher for one range at a time and keeps the warmed up state.
+            // The map goes away with the scan, unlike thread locals of the long-lived pool threads
+            final var matchers = new ConcurrentHashMap<Thread, StreamMatcher>();
+            return ForkJoinPool.commonPool().invoke(new Task(segment, regex, matchers, collectOffsets, 0, segment.byteSize()));
+        }
+    }
+
+    public static final class Result {
+        public final long bytes;
+        public final long lines;
+        public final long matchingLines;
+        /**
+         * Offsets of the first bytes of the matching lines in ascending order, {@code null} if not collected.
+         */
+        public final long[] offsets;
+
+        Result(long bytes, long lines, long matchingLines, long[] offsets) {
+            this.bytes = bytes;
+            this.lines = lines;
+            this.matchingLines = matchingLines;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @return Result of this range followed by the next one
+         */
+        Result merge(Result next) {
+            long[] mergedOffsets = null;
+            if (offsets != null) {
+                mergedOffsets = Arrays.copyOf(offsets, offsets.length + next.offsets.length);
+                System.arraycopy(next.offsets, 0, mergedOffsets, offsets.length, next.offsets.length);
+            }
+            return new Result(bytes + next.bytes, lines + next.lines, matchingLines + next.matchingLines, mergedOffsets);
+        }
+    }
+
+    private static final class Task extends RecursiveTask<Result> {
+        private final MemorySegment file;
+        private final CompiledRegex regex;
+        /**
+         * Stream matchers of the worker threads, every range finishes its last line before the next one starts.
+         */
+        private final ConcurrentHashMap<Thread, StreamMatcher> matchers;
+        private final boolean collectOffsets;
+        /**
+         * Start of a line.
+         */
+        private final long from;
+        /**
+         * Start of a line or the end of the file.
+         */
+        private final long to;
+
+        Task(MemorySegment file, CompiledRegex regex, ConcurrentHashMap<Thread, StreamMatcher> matchers,
+             boolean collectOffsets, long from, long to) {
+            this.file = file;
+            this.regex = regex;
+            this.matchers = matchers;
+            this.collectOffsets = collectOffsets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                final var split = nextLineStart(from + (to - from) / 2);
+                if (split < to) {
+                    final var first = new Task(file, regex, matchers, collectOffsets, from, split);
+                    first.fork();
+                    final var second = new Task(file, regex, matchers, collectOffsets, split, to).compute();
+                    return first.join().merge(second);
+                }
+            }
+            return scanLines();
+        }
+
+        private long nextLineStart(long position) {
+            for (long i = position; i < to; i++) {
+                if (file.get(ValueLayout.JAVA_BYTE, i) == '\n') {
+                    return i + 1;
+                }
+            }
+            return to;
+        }
+
+        private Result scanLines() {
+            final var matcher = matchers.computeIfAbsent(Thread.currentThread(), _ -> regex.streamMatcher());
+            long lines = 0;
+            long matchingLines = 0;
+            var offsets = collectOffsets ? new long[16] : null;
+            long lineStart = from;
+            var status = StreamMatcher.Status.UNDECIDED;
+            for (long windowStart = from; windowStart < to; windowStart += MAX_WINDOW) {
+                final var buffer = file.asSlice(windowStart, Math.min(to - windowStart, MAX_WINDOW)).asByteBuffer();
+                final var limit = buffer.limit();
+                // A line that continues from the previous window has been fed up to its end
+                int unfed = (int) Math.max(0, lineStart - windowStart);
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) != '\n') {
+                        continue;
+                    }
+                    if (status == StreamMatcher.Status.UNDECIDED) {
+                        buffer.limit(i).position(unfed);
+                        matcher.feed(buffer);
+                        buffer.limit(limit);
+                    }
+                    if (matcher.finish()) {
+                        if (offsets != null) {
+                            if (matchingLines == offsets.length) {
+                                offsets = Arrays.copyOf(offsets, Math.toIntExact(matchingLines * 2));
+                            }
+                            offsets[(int) matchingLines] = lineStart;
+                        }
+                        matchingLines++;
+                    }
+                    lines++;
+                    status = StreamMatcher.Status.UNDECIDED;
+                    unfed = i + 1;
+                    lineStart = windowStart + unfed;
+                }
+                if (status == StreamMatcher.Status.UNDECIDED && unfed < limit) {
+                    buffer.position(unfed);
+                    status = matcher.feed(buffer);
+                }
+            }
+            if (lineStart < to) {
+                // Last line without a line break
+                if (matcher.finish()) {
+                    if (offsets != null) {
+                        offsets = Arrays.copyOf(offsets, Math.toIntExact(matchingLines + 1));
+                        offsets[(int) matchingLines] = lineStart;
+                    }
+                    matchingLines++;
+                }
+                lines++;
+            }
+            return new Result(to - from, lines, matchingLines, offsets != null ? Arrays.copyOf(offsets, (int) matchingLines) : null);
+        }
+    }
+}
@@ -8,6 +8,18 @@ final class JobResults {
     public final TestData testData;
     public final int index;
     public long[] measurements;
+    /**
+     * Time spent in {@link RegexEngine#compile}, in nanoseconds, excluded from {@link #measurements}.
+     */
+    public volatile long compileTime;
+    /**
+     * Number of records matched by a batch benchmark, each of its {@link #measurements} covers all of them.
+     */
+    public volatile long records;
+    /**
+     * Tiers the compiled regex has gone through by the end of the benchmark, see {@link CompiledRegex#tierHistory()}.
+     */
+    public volatile String tiers;
     public volatile int iterations;
     public volatile Integer failedIteration;
     private final AtomicReference<Statistics> statistics = new AtomicReference<>();
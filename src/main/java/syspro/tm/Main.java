@@ -1,9 +1,16 @@
 package syspro.tm;
 
 import syspro.tm.RunnerThread.Job;
+import syspro.tm.engine.ByteScanner;
+import syspro.tm.regex.ByteSet;
+import syspro.tm.regex.RegexCharacter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 public final class Main {
@@ -12,16 +19,37 @@ public final class Main {
     private static final TimeUnit[] TIME_UNITS = {TimeUnit.DAYS, TimeUnit.HOURS, TimeUnit.MINUTES, TimeUnit.SECONDS, TimeUnit.MILLISECONDS, TimeUnit.MICROSECONDS, TimeUnit.NANOSECONDS};
     private static Job lastJob = null;
     private static String[] args;
+    /**
+     * Passes of the scan benchmark that let the JIT compile the scanner before anything is measured.
+     */
+    private static final int SCAN_WARMUP_PASSES = 200;
+    private static final int SCAN_MEASURED_PASSES = 201;
+    private static volatile int scanSink;
 
     static void main(String... args) {
         Thread.currentThread().setName("Main Thread (Terminal UI Thread)");
         Main.args = args;
 
+        if (hasArg("--scan-benchmark")) {
+            runScanBenchmark();
+            return;
+        }
+
         if (Configuration.implementations().isEmpty()) {
             IO.println("No RegexEngine implementations, nothing to do.");
             System.exit(1);
         }
 
+        final var grepIndex = indexOfArg("--grep");
+        if (grepIndex >= 0) {
+            if (grepIndex + 2 >= args.length) {
+                IO.println("Usage: --grep <regex> <file> [--offsets]");
+                System.exit(1);
+            }
+            runGrep(Utils.toBytes(args[grepIndex + 1]), Path.of(args[grepIndex + 2]), hasArg("--offsets"));
+            return;
+        }
+
         if (Configuration.internalTestData().isEmpty()) {
             IO.println("No test data, nothing to do.");
             System.exit(1);
@@ -80,22 +108,112 @@ public final class Main {
 
                 IO.print(format(statistics.mean, minUnit));
                 if (result.iterations == 1) {
-                    IO.println(' ' + unitName + " (1 iteration)");
+                    IO.print(' ' + unitName + " (1 iteration)");
                 } else {
-                    IO.println(" ± " + format(statistics.stddev, minUnit) + "  [" + format(statistics.min, minUnit) + " … " + format(statistics.max, minUnit) + "] " + unitName + " (" + result.iterations + " iterations)");
+                    IO.print(" ± " + format(statistics.stddev, minUnit) + "  [" + format(statistics.min, minUnit) + " … " + format(statistics.max, minUnit) + "] " + unitName + " (" + result.iterations + " iterations)");
+                }
+                if (result.records != 0) {
+                    IO.print(", %.1f ns per record".formatted((double) statistics.mean.toNanos() / result.records));
                 }
+                if (result.tiers != null) {
+                    IO.print(", tiers: " + result.tiers);
+                }
+                final var compileTime = Duration.ofNanos(result.compileTime);
+                final var compileUnit = bestTimeUnit(compileTime);
+                IO.println(", compiled in " + format(compileTime, compileUnit) + ' ' + timeUnitShortName(compileUnit));
                 caseIndex++;
             }
         }
     }
 
     private static boolean hasArg(String target) {
-        for (final var arg : args) {
-            if (arg.equals(target)) {
-                return true;
+        return indexOfArg(target) >= 0;
+    }
+
+    private static int indexOfArg(String target) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals(target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the lines of the file that contain a match of the regex with every engine, see {@link GrepScanner}.
+     */
+    private static void runGrep(byte[] regex, Path file, boolean printOffsets) {
+        for (final var implementation : Configuration.implementations()) {
+            final var compiled = implementation.engine.compileSearch(regex);
+            final var start = System.nanoTime();
+            final GrepScanner.Result result;
+            try {
+                result = GrepScanner.scan(compiled, file, printOffsets);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            final var duration = Duration.ofNanos(System.nanoTime() - start);
+            final var unit = bestTimeUnit(duration);
+            final var megabytesPerSecond = result.bytes / 1e6 / Math.max(duration.toNanos() / 1e9, 1e-9);
+            IO.println("%s: %d of %d lines match, %d bytes in %s %s (%.1f MB/s)".formatted(
+                    implementation.engineName, result.matchingLines, result.lines, result.bytes,
+                    format(duration, unit), timeUnitShortName(unit), megabytesPerSecond));
+            if (printOffsets) {
+                for (final var offset : result.offsets) {
+                    IO.println(offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the scalar and the vectorized {@link ByteScanner} on the runs of bytes that keep the self-looping
+     * states of common patterns in place, over the Sherlock Holmes text.
+     */
+    private static void runScanBenchmark() {
+        final var input = DefaultTestCases.loadSherlockBytes();
+        final var letters = ByteSet.range('a', 'z').union(ByteSet.range('A', 'Z'));
+        final var word = RegexCharacter.PredefinedCharacterClass.WORD.byteSet();
+        final String[] loops = {".* before H", "[a-zA-Z]+", "\\w*"};
+        final ByteSet[] exits = {ByteSet.of('H'), letters.complement(), word.complement()};
+        if (!ByteScanner.isVectorAvailable()) {
+            IO.println("Vector API is not available, run with --add-modules=jdk.incubator.vector to compare.");
+        }
+        for (int i = 0; i < loops.length; i++) {
+            IO.print("%s: median scalar %.3f ns/byte".formatted(loops[i], measureScan(ByteScanner.scalar(exits[i]), input)));
+            if (ByteScanner.isVectorAvailable()) {
+                IO.print(", vector %.3f ns/byte".formatted(measureScan(ByteScanner.of(exits[i]), input)));
             }
+            IO.println();
+        }
+    }
+
+    /**
+     * @return Median time per input byte of finding every byte of the set in the input, after unmeasured warm-up passes
+     */
+    private static double measureScan(ByteScanner scanner, byte[] input) {
+        for (int pass = 0; pass < SCAN_WARMUP_PASSES; pass++) {
+            scanSink = scanAll(scanner, input);
+        }
+        final var times = new long[SCAN_MEASURED_PASSES];
+        for (int pass = 0; pass < times.length; pass++) {
+            final var start = System.nanoTime();
+            scanSink = scanAll(scanner, input);
+            times[pass] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return (double) times[times.length / 2] / input.length;
+    }
+
+    /**
+     * @return Number of bytes of the input that belong to the set of the scanner
+     */
+    private static int scanAll(ByteScanner scanner, byte[] input) {
+        int found = 0;
+        for (int i = scanner.indexOf(input, 0, input.length); i < input.length; i = scanner.indexOf(input, i + 1, input.length)) {
+            found++;
         }
-        return false;
+        return found;
     }
 
     private static void runTests() {
@@ -120,7 +238,7 @@ public final class Main {
                 final var regex = testData.regex.clone();
                 final var input = testData.input.clone();
                 final var start = System.nanoTime();
-                final var actual = engine.matches(regex, input);
+                final var actual = testData.search ? engine.find(regex, input) : engine.matches(regex, input);
                 final var time = System.nanoTime() - start;
                 totalDuration = totalDuration.plus(Duration.ofNanos(time));
                 final var failed = actual != testData.expected;
@@ -0,0 +1,124 @@
+package syspro.tm;
+
+import java.util.Arrays;
+
+/**
+ * Records stored back to back in a single array, like a binary column of Apache Arrow:
+ * record {@code i} is {@code data[offsets[i], offsets[i + 1])}. The arrays are shared, not copied,
+ * so the offsets are only known to be valid at construction: code that hands them to native code
+ * checks them again with {@link #checkOffsets}.
+ * <p>
+ * Results of {@link CompiledRegex#matchBatch} are bitmaps with bit {@code i % 64} of word {@code i / 64}
+ * standing for record {@code i}.
+ */
+public final class RecordBatch {
+    public final byte[] data;
+    public final int[] offsets;
+
+    /**
+     * @param offsets Non-decreasing offsets into {@code data}, one more than the number of records
+     */
+    public RecordBatch(byte[] data, int[] offsets) {
+        checkOffsets(data, offsets);
+
+        this.data = data;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @throws IllegalArgumentException The offsets are empty, decrease somewhere, or point outside {@code data}
+     */
+    public static void checkOffsets(byte[] data, int[] offsets) {
+        if (offsets.length == 0) {
+            throw new IllegalArgumentException("Offsets should end with the end of the last record");
+        }
+        if (offsets[0] < 0) {
+            throw new IllegalArgumentException("Record 0 starts at a negative offset: " + offsets[0]);
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                throw new IllegalArgumentException("Record " + (i - 1) + " ends before it starts: " + offsets[i] + " < " + offsets[i - 1]);
+            }
+        }
+        if (offsets[offsets.length - 1] > data.length) {
+            throw new IllegalArgumentException("Records end after the data: " + offsets[offsets.length - 1] + " > " + data.length);
+        }
+    }
+
+    /**
+     * @return Batch of the windows {@code data[i * windowSize, (i + 1) * windowSize)}, the last one may be shorter
+     */
+    public static RecordBatch windows(byte[] data, int windowSize) {
+        final var count = windowCount(data.length, windowSize);
+        final var offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = i * windowSize;
+        }
+        offsets[count] = data.length;
+        return new RecordBatch(data, offsets);
+    }
+
+    /**
+     * @return Number of windows of at most {@code windowSize} bytes that cover {@code length} bytes
+     */
+    public static int windowCount(int length, int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size should be positive: " + windowSize);
+        }
+        return length / windowSize + (length % windowSize != 0 ? 1 : 0);
+    }
+
+    /**
+     * @return Number of records
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return Copy of the record
+     */
+    public byte[] record(int index) {
+        return Arrays.copyOfRange(data, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * @return Number of words in a result bitmap of this batch
+     */
+    public int bitmapLength() {
+        return bitmapLength(size());
+    }
+
+    /**
+     * Clears the bits of all records in the result bitmap.
+     */
+    public void clearBitmap(long[] results) {
+        clearBitmap(results, size());
+    }
+
+    /**
+     * @return Number of words in a result bitmap of that many records
+     */
+    public static int bitmapLength(int records) {
+        return (records + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Clears the bits of the first {@code records} records in the result bitmap.
+     */
+    public static void clearBitmap(long[] results, int records) {
+        Arrays.fill(results, 0, checkBitmap(results, records), 0);
+    }
+
+    /**
+     * @return Number of words in a result bitmap of that many records
+     * @throws IllegalArgumentException The bitmap is shorter than that
+     */
+    public static int checkBitmap(long[] results, int records) {
+        final var length = bitmapLength(records);
+        if (results.length < length) {
+            throw new IllegalArgumentException("Bitmap of " + records + " records should have at least " + length + " words: " + results.length);
+        }
+        return length;
+    }
+}
@@ -5,4 +5,41 @@ public interface RegexEngine {
      * Match the given regex against the entire given input.
      */
     boolean matches(byte[] regex, byte[] input);
+
+    /**
+     * Compile the given regex once for matching against many inputs.
+     * The default implementation defers all work to {@link #matches(byte[], byte[])} with a private copy of the regex.
+     */
+    default CompiledRegex compile(byte[] regex) {
+        final var copy = regex.clone();
+        return input -> matches(copy, input);
+    }
+
+    /**
+     * Search for the given regex anywhere in the given input.
+     * The default implementation matches {@link Utils#toSearchRegex .*(regex).*} against the entire input.
+     */
+    default boolean find(byte[] regex, byte[] input) {
+        return matches(Utils.toSearchRegex(regex), input);
+    }
+
+    /**
+     * Compile the given regex once for {@link #find searching} in many inputs.
+     * The default implementation compiles {@link Utils#toSearchRegex .*(regex).*}.
+     */
+    default CompiledRegex compileSearch(byte[] regex) {
+        return compile(Utils.toSearchRegex(regex));
+    }
+
+    /**
+     * Compile the given regexes once for matching each of them against the entire input in a single call.
+     * The default implementation {@link #compile compiles} every regex on its own and tries them one by one.
+     */
+    default RegexSet compileSet(byte[]... regexes) {
+        final var compiled = new CompiledRegex[regexes.length];
+        for (int i = 0; i < regexes.length; i++) {
+            compiled[i] = compile(regexes[i]);
+        }
+        return new SequentialRegexSet(compiled);
+    }
 }
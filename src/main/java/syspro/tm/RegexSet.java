@@ -0,0 +1,19 @@
+package syspro.tm;
+
+import java.util.BitSet;
+
+/**
+ * Regexes compiled together by {@link RegexEngine#compileSet}, so that an input is checked against all of them at once.
+ * Implementations must be safe to use from multiple threads at once.
+ */
+public interface RegexSet {
+    /**
+     * @return Number of regexes in the set
+     */
+    int size();
+
+    /**
+     * @return Indices of the regexes that match the entire given input, in the order they have been compiled
+     */
+    BitSet matches(byte[] input);
+}
@@ -1,9 +1,11 @@
 package syspro.tm;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Function;
 
 final class RunnerThread extends Thread {
-    private static final int REGEX_CLONE_FREQUENCY = 100_000;
     volatile Job currentJob;
 
     public RunnerThread() {
@@ -20,7 +22,13 @@ final class RunnerThread extends Thread {
                 final var results = new JobResults(implementation, testData, index);
                 final var job = new Job(results);
                 currentJob = job;
-                if (testData.slidingWindowSize != null) {
+                if (testData.batchSize != null) {
+                    measureBatch(job);
+                } else if (testData.regexSet != null) {
+                    measureRegexSetSlidingWindow(job);
+                } else if (testData.streamChunkSize != null) {
+                    measureStreamingSlidingWindow(job);
+                } else if (testData.slidingWindowSize != null) {
                     measureSlidingWindow(job);
                 } else {
                     measure(job);
@@ -32,9 +40,11 @@ final class RunnerThread extends Thread {
 
     private void measure(Job job) {
         final var results = job.results;
-        final var engine = results.implementation.engine;
         final var testCase = results.testData;
-        var regex = testCase.regex.clone();
+        final var compiled = compile(results);
+        if (compiled == null) {
+            return;
+        }
         final var input = testCase.input;
         final var expected = testCase.expected;
         final var measurements = results.measurements;
@@ -45,7 +55,7 @@ final class RunnerThread extends Thread {
         do {
             final var start = System.nanoTime();
             try {
-                final var actual = engine.matches(regex, input);
+                final var actual = compiled.matches(input);
                 if (actual != expected) {
                     ok = false;
                     break;
@@ -59,35 +69,108 @@ final class RunnerThread extends Thread {
             }
             final var duration = time - start;
             measurements[i++] = duration;
-            if (i % REGEX_CLONE_FREQUENCY == 0) {
-                regex = testCase.regex.clone();
-            }
         } while (time < deadline && i != Main.ITERATION_COUNT_MAX);
         if (!ok) {
             results.failedIteration = i;
         }
         results.iterations = i;
+        results.tiers = compiled.tierHistory();
         results.statistics();
     }
 
+    /**
+     * Compiles the regex of the test case once and records the time it took.
+     *
+     * @return Compiled regex, or {@code null} if the compilation has failed
+     */
+    private static CompiledRegex compile(JobResults results) {
+        final var regex = results.testData.regex.clone();
+        return compile(results, engine -> results.testData.search ? engine.compileSearch(regex) : engine.compile(regex));
+    }
+
+    /**
+     * Runs the compiler on the engine of the job and records the time it took.
+     *
+     * @return Compiled form, or {@code null} if the compilation has failed
+     */
+    private static <T> T compile(JobResults results, Function<RegexEngine, T> compiler) {
+        final var start = System.nanoTime();
+        try {
+            return compiler.apply(results.implementation.engine);
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            results.failedIteration = 0;
+            results.statistics();
+            return null;
+        } finally {
+            results.compileTime = System.nanoTime() - start;
+        }
+    }
+
     boolean actualBox;
 
+    /**
+     * Matches all windows with a single {@link CompiledRegex#matchWindows} call, so that engines can hand
+     * the whole input over at once instead of paying the call overhead per window.
+     */
     private void measureSlidingWindow(Job job) {
         final var results = job.results;
-        final var engine = results.implementation.engine;
         final var testCase = results.testData;
-        var regex = testCase.regex.clone();
+        final var compiled = compile(results);
+        if (compiled == null) {
+            return;
+        }
+        final var input = testCase.input;
+        final var measurements = results.measurements;
+        final var windowSize = testCase.slidingWindowSize;
+        final var bitmap = new long[RecordBatch.bitmapLength(RecordBatch.windowCount(input.length, windowSize))];
+        final long time;
+        var ok = true;
+        int matched = 0;
+        final var start = System.nanoTime();
+        try {
+            matched = compiled.matchWindows(input, windowSize, bitmap);
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            ok = false;
+        } finally {
+            time = System.nanoTime() - start;
+        }
+        actualBox = matched != 0;
+        measurements[0] = time;
+        if (!ok) {
+            results.failedIteration = 1;
+        }
+        results.tiers = compiled.tierHistory();
+        results.iterations = 1;
+        results.statistics();
+    }
+
+    /**
+     * Matches every window against all regexes of the set with a single {@link RegexSet} call.
+     */
+    private void measureRegexSetSlidingWindow(Job job) {
+        final var results = job.results;
+        final var testCase = results.testData;
+        final var regexes = new byte[testCase.regexSet.length][];
+        for (int i = 0; i < regexes.length; i++) {
+            regexes[i] = testCase.regexSet[i].clone();
+        }
+        final var regexSet = compile(results, engine -> engine.compileSet(regexes));
+        if (regexSet == null) {
+            return;
+        }
         final var input = testCase.input;
         final var measurements = results.measurements;
         final var windowSize = testCase.slidingWindowSize;
         long time = 0;
         var ok = true;
         for (int i = 0; i < input.length; i += windowSize) {
-            final var window = Arrays.copyOfRange(input, i, i + windowSize);
+            final var window = Arrays.copyOfRange(input, i, Math.min(i + windowSize, input.length));
             final var start = System.nanoTime();
-            final boolean actual;
+            final BitSet actual;
             try {
-                actual = engine.matches(regex, window);
+                actual = regexSet.matches(window);
             } catch (Throwable throwable) {
                 throwable.printStackTrace();
                 ok = false;
@@ -95,12 +178,120 @@ final class RunnerThread extends Thread {
             } finally {
                 time += System.nanoTime() - start;
             }
-            actualBox = actual;
+            actualBox = !actual.isEmpty();
+        }
+        measurements[0] = time;
+        if (!ok) {
+            results.failedIteration = 1;
+        }
+        results.iterations = 1;
+        results.statistics();
+    }
+
+    /**
+     * Matches windows of the repeated input as records of {@link RecordBatch batches} with one call per batch.
+     * The batches are laid out before the measurement, so that only the matching is timed.
+     */
+    private void measureBatch(Job job) {
+        final var results = job.results;
+        final var testCase = results.testData;
+        final var compiled = compile(results);
+        if (compiled == null) {
+            return;
+        }
+        final var batches = recordBatches(testCase.input, testCase.slidingWindowSize, testCase.batchSize);
+        final var bitmap = new long[batches[0].bitmapLength()];
+        final var measurements = results.measurements;
+        final long time;
+        var ok = true;
+        int matched = 0;
+        final var start = System.nanoTime();
+        try {
+            for (final var batch : batches) {
+                matched += compiled.matchBatch(batch, bitmap);
+            }
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            ok = false;
+        } finally {
+            time = System.nanoTime() - start;
+        }
+        actualBox = matched != 0;
+        measurements[0] = time;
+        if (!ok) {
+            results.failedIteration = 1;
+        }
+        results.records = (long) batches.length * testCase.batchSize;
+        results.tiers = compiled.tierHistory();
+        results.iterations = 1;
+        results.statistics();
+    }
+
+    /**
+     * @return Batches of {@code batchSize} consecutive records of {@code recordSize} bytes that share a single array,
+     * which holds the input repeated as many times as it takes to fill the last batch
+     */
+    private static RecordBatch[] recordBatches(byte[] input, int recordSize, int batchSize) {
+        final var inputRecords = (input.length + recordSize - 1) / recordSize;
+        final var batchCount = (inputRecords + batchSize - 1) / batchSize;
+        final var records = Math.multiplyExact(batchCount, batchSize);
+        final var data = new byte[Math.multiplyExact(records, recordSize)];
+        for (int i = 0; i < data.length; i += input.length) {
+            System.arraycopy(input, 0, data, i, Math.min(input.length, data.length - i));
+        }
+        final var batches = new RecordBatch[batchCount];
+        for (int b = 0; b < batchCount; b++) {
+            final var offsets = new int[batchSize + 1];
+            for (int i = 0; i <= batchSize; i++) {
+                offsets[i] = (b * batchSize + i) * recordSize;
+            }
+            batches[b] = new RecordBatch(data, offsets);
+        }
+        return batches;
+    }
+
+    /**
+     * Feeds every window to a single reused {@link StreamMatcher} in chunks that share the input array,
+     * stopping early once the result of the window is decided.
+     */
+    private void measureStreamingSlidingWindow(Job job) {
+        final var results = job.results;
+        final var testCase = results.testData;
+        final var compiled = compile(results);
+        if (compiled == null) {
+            return;
+        }
+        final var input = testCase.input;
+        final var buffer = ByteBuffer.wrap(input);
+        final var measurements = results.measurements;
+        final var windowSize = testCase.slidingWindowSize;
+        final var chunkSize = testCase.streamChunkSize;
+        final long time;
+        var ok = true;
+        final var start = System.nanoTime();
+        try {
+            final var matcher = compiled.streamMatcher();
+            for (int i = 0; i < input.length; i += windowSize) {
+                final var windowEnd = Math.min(i + windowSize, input.length);
+                for (int offset = i; offset < windowEnd; offset += chunkSize) {
+                    buffer.limit(Math.min(offset + chunkSize, windowEnd)).position(offset);
+                    if (matcher.feed(buffer) != StreamMatcher.Status.UNDECIDED) {
+                        break;
+                    }
+                }
+                actualBox = matcher.finish();
+            }
+        } catch (Throwable throwable) {
+            throwable.printStackTrace();
+            ok = false;
+        } finally {
+            time = System.nanoTime() - start;
         }
         measurements[0] = time;
         if (!ok) {
             results.failedIteration = 1;
         }
+        results.tiers = compiled.tierHistory();
         results.iterations = 1;
         results.statistics();
     }
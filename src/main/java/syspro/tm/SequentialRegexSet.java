@@ -0,0 +1,30 @@
+package syspro.tm;
+
+import java.util.BitSet;
+
+/**
+ * Fallback {@link RegexSet} for engines without a combined automaton: matches every compiled regex in turn.
+ */
+final class SequentialRegexSet implements RegexSet {
+    private final CompiledRegex[] regexes;
+
+    SequentialRegexSet(CompiledRegex[] regexes) {
+        this.regexes = regexes;
+    }
+
+    @Override
+    public int size() {
+        return regexes.length;
+    }
+
+    @Override
+    public BitSet matches(byte[] input) {
+        final var result = new BitSet(regexes.length);
+        for (int i = 0; i < regexes.length; i++) {
+            if (regexes[i].matches(input)) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,38 @@
+package syspro.tm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Matches a {@link CompiledRegex} against an input that arrives in chunks.
+ * The automaton state is carried from one chunk to the next, so the chunks never have to be concatenated.
+ * A stream matcher holds mutable state and is not thread-safe.
+ */
+public interface StreamMatcher {
+    enum Status {
+        /**
+         * The result depends on the input that has not been fed yet.
+         */
+        UNDECIDED,
+        /**
+         * The input matches whatever follows, for example after the prefix of {@code abc.*} has been seen.
+         */
+        MATCH,
+        /**
+         * No continuation of the input can match.
+         */
+        NO_MATCH,
+    }
+
+    /**
+     * Consumes the remaining bytes of the chunk, advancing its position to the limit.
+     * Bytes after the point where the result has been decided are skipped.
+     */
+    Status feed(ByteBuffer chunk);
+
+    /**
+     * Ends the input and resets the matcher, so that it can be reused for the next input.
+     *
+     * @return Whether the regex matched the entire input fed since the last reset
+     */
+    boolean finish();
+}
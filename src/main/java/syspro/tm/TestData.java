@@ -6,20 +6,52 @@ public final class TestData {
     public final byte[] input;
     public final boolean expected;
     public final boolean benchmark;
+    /**
+     * Whether the regex is searched for anywhere in the input instead of matching the entire input.
+     */
+    public final boolean search;
     public final Integer slidingWindowSize;
+    /**
+     * Size of the chunks every sliding window is fed in to a {@link StreamMatcher}, {@code null} to match whole windows.
+     */
+    public final Integer streamChunkSize;
+    /**
+     * Regexes matched together by a {@link RegexSet}, {@link #regex} is the first of them. {@code null} for single regexes.
+     */
+    public final byte[][] regexSet;
+    /**
+     * Number of records of {@link #slidingWindowSize} bytes matched by every {@link CompiledRegex#matchBatch} call,
+     * {@code null} to match every window with a call of its own.
+     */
+    public final Integer batchSize;
     private static final int MAX_INPUT_LENGTH = 20;
 
-    TestData(ConfigurationProvider provider, byte[] regex, byte[] input, boolean expected, boolean benchmark, Integer slidingWindowSize) {
+    TestData(ConfigurationProvider provider, byte[] regex, byte[] input, boolean expected, boolean benchmark, boolean search, Integer slidingWindowSize, Integer streamChunkSize, byte[][] regexSet, Integer batchSize) {
         this.provider = provider;
         this.regex = regex;
         this.input = input;
         this.expected = expected;
         this.benchmark = benchmark;
+        this.search = search;
         this.slidingWindowSize = slidingWindowSize;
+        this.streamChunkSize = streamChunkSize;
+        this.regexSet = regexSet;
+        this.batchSize = batchSize;
     }
 
     TestData publicClone() {
-        return new TestData(this.provider, this.regex.clone(), this.input.clone(), this.expected, this.benchmark, this.slidingWindowSize);
+        return new TestData(this.provider, this.regex.clone(), this.input.clone(), this.expected, this.benchmark, this.search, this.slidingWindowSize, this.streamChunkSize, cloneRegexSet(), this.batchSize);
+    }
+
+    private byte[][] cloneRegexSet() {
+        if (regexSet == null) {
+            return null;
+        }
+        final var result = new byte[regexSet.length][];
+        for (int i = 0; i < regexSet.length; i++) {
+            result[i] = regexSet[i].clone();
+        }
+        return result;
     }
 
     @Override
@@ -30,9 +62,15 @@ public final class TestData {
             sb.append(provider.getClass().getSimpleName());
             sb.append("] ");
         }
-        sb.append("regex=");
-        for (final var b : regex) {
-            sb.append(Utils.toHumanString(b));
+        if (regexSet != null) {
+            sb.append("regexSet=");
+            sb.append(regexSet.length);
+            sb.append(" regexes");
+        } else {
+            sb.append(search ? "search=" : "regex=");
+            for (final var b : regex) {
+                sb.append(Utils.toHumanString(b));
+            }
         }
         sb.append(",input=");
         int inputLength = input.length;
@@ -47,6 +85,14 @@ public final class TestData {
         if (slidingWindowSize != null) {
             sb.append(",slidingWindowSize=");
             sb.append(slidingWindowSize);
+            if (streamChunkSize != null) {
+                sb.append(",streamChunkSize=");
+                sb.append(streamChunkSize);
+            }
+            if (batchSize != null) {
+                sb.append(",batchSize=");
+                sb.append(batchSize);
+            }
         } else {
             sb.append(benchmark ? ",benchmark" : ",test");
             sb.append(expected ? ",positive" : ",negative");
@@ -8,11 +8,19 @@ public abstract sealed class TestDataListBuilder permits Configuration.TestDataL
     protected Group currentGroup;
 
     public final Group testGroup() {
-        return new Group(false);
+        return new Group(false, false);
     }
 
     public final Group benchmarkGroup() {
-        return new Group(true);
+        return new Group(true, false);
+    }
+
+    /**
+     * Cases added in this group check whether the regex occurs anywhere in the input, see {@link RegexEngine#find}.
+     * Groups nested in it are search groups too.
+     */
+    public final Group searchGroup() {
+        return new Group(currentGroup != null && currentGroup.isBenchmark, true);
     }
 
     public abstract void add(byte[] regex, byte[] input, boolean expected);
@@ -33,14 +41,35 @@ public abstract sealed class TestDataListBuilder permits Configuration.TestDataL
 
     public abstract void addSlidingWindowBenchmark(byte[] regex, byte[] input, int inputWindow);
 
+    /**
+     * Like {@link #addSlidingWindowBenchmark}, but every window is fed to a {@link StreamMatcher} in chunks
+     * of {@code chunkSize} bytes that share the input array.
+     */
+    public abstract void addStreamingSlidingWindowBenchmark(byte[] regex, byte[] input, int inputWindow, int chunkSize);
+
+    /**
+     * Like {@link #addSlidingWindowBenchmark}, but every window is matched against all regexes at once
+     * with a {@link RegexSet}, see {@link RegexEngine#compileSet}.
+     */
+    public abstract void addRegexSetSlidingWindowBenchmark(byte[][] regexes, byte[] input, int inputWindow);
+
+    /**
+     * Like {@link #addSlidingWindowBenchmark}, but the windows are records of a {@link RecordBatch} matched
+     * {@code batchSize} at a time with {@link CompiledRegex#matchBatch}. The input is repeated until the last batch
+     * is full, and the cost per record is reported.
+     */
+    public abstract void addBatchBenchmark(byte[] regex, byte[] input, int recordSize, int batchSize);
+
     public final class Group implements AutoCloseable {
         public final boolean isBenchmark;
+        public final boolean isSearch;
         private final Group outer;
         private final IllegalStateException allocation;
         private IllegalStateException closed;
 
-        private Group(boolean isBenchmark) {
+        private Group(boolean isBenchmark, boolean isSearch) {
             this.isBenchmark = isBenchmark;
+            this.isSearch = isSearch || (currentGroup != null && currentGroup.isSearch);
             this.allocation = new IllegalStateException("Group is not closed (use try-with-resources)");
 
             this.outer = currentGroup;
@@ -159,4 +159,17 @@ public final class Utils {
         }
         return new String(chars);
     }
+
+    /**
+     * @return Regex {@code .*(regex).*} that matches every input containing a match of the given regex
+     */
+    public static byte[] toSearchRegex(byte[] regex) {
+        final var prefix = toBytes(".*(");
+        final var suffix = toBytes(").*");
+        final var result = new byte[prefix.length + regex.length + suffix.length];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        System.arraycopy(regex, 0, result, prefix.length, regex.length);
+        System.arraycopy(suffix, 0, result, prefix.length + regex.length, suffix.length);
+        return result;
+    }
 }
@@ -0,0 +1,250 @@
+package syspro.tm.engine;
+
+import syspro.tm.CompiledRegex;
+import syspro.tm.CompiledRegexCache;
+import syspro.tm.RecordBatch;
+import syspro.tm.RegexEngine;
+import syspro.tm.RegexSet;
+import syspro.tm.StreamMatcher;
+import syspro.tm.regex.Regex;
+import syspro.tm.regex.RegexCharacter;
+import syspro.tm.regex.RegexSimplifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Base class for built-in engines: parses, simplifies and compiles every distinct regex once.
+ * Compiled forms are kept in a {@link CompiledRegexCache}, with the last used one checked first.
+ * Inputs that lack the literals every match requires are rejected by a {@link Prefilter} before the engine runs.
+ * {@link #compile(byte[])} bypasses the cache, so that it always reflects the full compilation cost.
+ * <p>
+ * Searches are compiled as {@code .*(regex).*} unless the engine has an unanchored mode of its own.
+ * Regex sets are matched one regex at a time unless the engine can combine them into a single automaton.
+ * Record batches are matched in place, without copying the records, by engines that can match an array range.
+ */
+abstract class AbstractRegexEngine<T> implements RegexEngine {
+    static final int CACHE_SIZE = 256;
+
+    private final CompiledRegexCache<Compiled> cache = new CompiledRegexCache<>(CACHE_SIZE, regex -> compileRegex(regex, false));
+    private final CompiledRegexCache<Compiled> searchCache = new CompiledRegexCache<>(CACHE_SIZE, regex -> compileRegex(regex, true));
+    private volatile Compiled lastCompiled;
+    private volatile Compiled lastSearch;
+
+    @Override
+    public final boolean matches(byte[] regex, byte[] input) {
+        var compiled = lastCompiled;
+        if (compiled == null || !Arrays.equals(compiled.regex, regex)) {
+            compiled = cache.get(regex);
+            lastCompiled = compiled;
+        }
+        return compiled.matches(input);
+    }
+
+    @Override
+    public final boolean find(byte[] regex, byte[] input) {
+        var compiled = lastSearch;
+        if (compiled == null || !Arrays.equals(compiled.regex, regex)) {
+            compiled = searchCache.get(regex);
+            lastSearch = compiled;
+        }
+        return compiled.matches(input);
+    }
+
+    @Override
+    public final CompiledRegex compile(byte[] regex) {
+        return compileRegex(regex.clone(), false);
+    }
+
+    @Override
+    public final CompiledRegex compileSearch(byte[] regex) {
+        return compileRegex(regex.clone(), true);
+    }
+
+    @Override
+    public final RegexSet compileSet(byte[]... regexes) {
+        if (regexes.length != 0) {
+            final var parsed = new ArrayList<Regex>(regexes.length);
+            for (final var regex : regexes) {
+                parsed.add(RegexSimplifier.simplify(Regex.parse(regex)));
+            }
+            final var combined = compileSet(parsed);
+            if (combined != null) {
+                return combined;
+            }
+        }
+        return RegexEngine.super.compileSet(regexes);
+    }
+
+    /**
+     * @return Statistics of the compiled regex cache
+     */
+    public final CompiledRegexCache<?> cache() {
+        return cache;
+    }
+
+    private Compiled compileRegex(byte[] regex, boolean search) {
+        final var parsed = RegexSimplifier.simplify(Regex.parse(regex));
+        if (search) {
+            return new Compiled(regex, true, Prefilter.of(searchRegex(parsed)), compileSearch(parsed));
+        }
+        return new Compiled(regex, false, Prefilter.of(parsed), compile(parsed));
+    }
+
+    /**
+     * @return Regex {@code .*(regex).*}
+     */
+    static Regex searchRegex(Regex regex) {
+        final var any = new Regex.Repetition(new Regex.SingleCharacter(RegexCharacter.PredefinedCharacterClass.WILDCARD), 0, null);
+        return RegexSimplifier.simplify(new Regex.Concatenation(any, regex, any));
+    }
+
+    abstract T compile(Regex regex);
+
+    abstract boolean matches(T compiled, byte[] input);
+
+    /**
+     * @return Compiled form for {@link #find(Object, byte[])}
+     */
+    T compileSearch(Regex regex) {
+        return compile(searchRegex(regex));
+    }
+
+    /**
+     * @return Whether the input contains a match of the regex compiled by {@link #compileSearch(Regex)}
+     */
+    boolean find(T compiled, byte[] input) {
+        return matches(compiled, input);
+    }
+
+    /**
+     * @return Whether {@code input[from, to)} matches, the default implementation copies the range
+     */
+    boolean matches(T compiled, byte[] input, int from, int to) {
+        return matches(compiled, Arrays.copyOfRange(input, from, to));
+    }
+
+    /**
+     * @return Whether {@code input[from, to)} contains a match of the regex compiled by {@link #compileSearch(Regex)}
+     */
+    boolean find(T compiled, byte[] input, int from, int to) {
+        return matches(compiled, input, from, to);
+    }
+
+    /**
+     * Matches all records of the batch at once, without the prefilter. The bitmap has already been cleared.
+     * Only engines whose {@link #find(Object, byte[])} is {@link #matches(Object, byte[])} may override it.
+     *
+     * @return Number of matching records, or -1 to match the records one by one
+     */
+    int matchBatch(T compiled, RecordBatch batch, long[] results) {
+        return -1;
+    }
+
+    /**
+     * Matches all windows of the input at once like {@link #matchBatch(Object, RecordBatch, long[])},
+     * see {@link CompiledRegex#matchWindows}. The bitmap has already been cleared.
+     *
+     * @return Number of matching windows, or -1 to match them as a {@link RecordBatch#windows batch}
+     */
+    int matchWindows(T compiled, byte[] input, int windowSize, long[] results) {
+        return -1;
+    }
+
+    /**
+     * @return Single automaton for the non-empty list of regexes,
+     * or {@code null} to {@link #compile(byte[]) compile} and match them one by one
+     */
+    RegexSet compileSet(List<Regex> regexes) {
+        return null;
+    }
+
+    /**
+     * @return Matcher that carries the engine state across input chunks, or {@code null} to buffer the input
+     */
+    StreamMatcher streamMatcher(T compiled) {
+        return null;
+    }
+
+    /**
+     * @return Stream matcher for the regex compiled by {@link #compileSearch(Regex)}, or {@code null} to buffer the input
+     */
+    StreamMatcher searchStreamMatcher(T compiled) {
+        return streamMatcher(compiled);
+    }
+
+    /**
+     * @return Tiers the compiled regex has gone through, see {@link CompiledRegex#tierHistory()}
+     */
+    String tierHistory(T compiled) {
+        return null;
+    }
+
+    private final class Compiled implements CompiledRegex {
+        final byte[] regex;
+        final boolean search;
+        final Prefilter prefilter;
+        final T value;
+
+        Compiled(byte[] regex, boolean search, Prefilter prefilter, T value) {
+            this.regex = regex;
+            this.search = search;
+            this.prefilter = prefilter;
+            this.value = value;
+        }
+
+        @Override
+        public boolean matches(byte[] input) {
+            if (prefilter != null && !prefilter.mayMatch(input)) {
+                return false;
+            }
+            return search ? find(value, input) : AbstractRegexEngine.this.matches(value, input);
+        }
+
+        @Override
+        public int matchBatch(RecordBatch batch, long[] results) {
+            batch.clearBitmap(results);
+            final var batchCount = AbstractRegexEngine.this.matchBatch(value, batch, results);
+            if (batchCount >= 0) {
+                return batchCount;
+            }
+
+            final var data = batch.data;
+            final var offsets = batch.offsets;
+            final var size = batch.size();
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                final var from = offsets[i];
+                final var to = offsets[i + 1];
+                if (prefilter != null && !prefilter.mayMatch(data, from, to)) {
+                    continue;
+                }
+                if (search ? find(value, data, from, to) : AbstractRegexEngine.this.matches(value, data, from, to)) {
+                    results[i / Long.SIZE] |= 1L << i;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public int matchWindows(byte[] input, int windowSize, long[] results) {
+            RecordBatch.clearBitmap(results, RecordBatch.windowCount(input.length, windowSize));
+            final var count = AbstractRegexEngine.this.matchWindows(value, input, windowSize, results);
+            return count >= 0 ? count : matchBatch(RecordBatch.windows(input, windowSize), results);
+        }
+
+        @Override
+        public StreamMatcher streamMatcher() {
+            // The prefilter needs the complete input, so streamed chunks go straight to the engine
+            final var result = search ? searchStreamMatcher(value) : AbstractRegexEngine.this.streamMatcher(value);
+            return result != null ? result : CompiledRegex.super.streamMatcher();
+        }
+
+        @Override
+        public String tierHistory() {
+            return AbstractRegexEngine.this.tierHistory(value);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package syspro.tm.engine;
+
+import syspro.tm.regex.Regex;
+
+/**
+ * Memoized backtracking ("BitState") engine: the speed of a backtracker on short inputs without its exponential
+ * worst case. Long inputs are handed over to the {@link PikeVmRegexEngine Pike VM}.
+ */
+public final class BacktrackRegexEngine extends AbstractRegexEngine<BitStateBacktracker> {
+    @Override
+    BitStateBacktracker compile(Regex regex) {
+        return new BitStateBacktracker(Program.compile(regex));
+    }
+
+    @Override
+    boolean matches(BitStateBacktracker compiled, byte[] input) {
+        return compiled.matches(input);
+    }
+
+    @Override
+    boolean matches(BitStateBacktracker compiled, byte[] input, int from, int to) {
+        return compiled.matches(input, from, to);
+    }
+}
@@ -0,0 +1,95 @@
+package syspro.tm.engine;
+
+import java.util.Arrays;
+
+/**
+ * Backtracking matcher over the {@link Program} that never explores the same (instruction, input position)
+ * pair twice, bounding the work to O(program &times; input). The visited bitset is reused by every thread;
+ * inputs that would need more than {@link #MAX_VISITED_BITS} bits are matched with the Pike VM instead.
+ */
+final class BitStateBacktracker implements ByteMatcher {
+    static final int MAX_VISITED_BITS = 256 * 1024;
+
+    private final Program program;
+    private final int maxInputLength;
+    private final ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(Scratch::new);
+
+    BitStateBacktracker(Program program) {
+        this.program = program;
+        this.maxInputLength = MAX_VISITED_BITS / program.size() - 1;
+    }
+
+    @Override
+    public boolean matches(byte[] input) {
+        return matches(input, 0, input.length);
+    }
+
+    @Override
+    public boolean matches(byte[] input, int from, int to) {
+        final var length = to - from;
+        if (length > maxInputLength) {
+            return PikeVmRegexEngine.simulate(program, input, from, to);
+        }
+
+        final var scratch = scratches.get();
+        final var stride = length + 1;
+        final var visited = scratch.visited((long) program.size() * stride);
+        var stack = scratch.stack;
+        final var opcodes = program.opcodes;
+        final var next = program.next;
+        final var alternative = program.alternative;
+        final var sets = program.sets;
+
+        int top = 0;
+        stack[top++] = program.start;
+        stack[top++] = 0;
+        while (top != 0) {
+            final var position = stack[--top];
+            var pc = stack[--top];
+            var i = position;
+            while (true) {
+                final var bit = pc * stride + i;
+                final var word = bit >>> 6;
+                final var mask = 1L << bit;
+                if ((visited[word] & mask) != 0) {
+                    break;
+                }
+                visited[word] |= mask;
+
+                final var opcode = opcodes[pc];
+                if (opcode == Program.BYTE_SET) {
+                    if (i == length || !sets[pc].contains(input[from + i])) {
+                        break;
+                    }
+                    pc = next[pc];
+                    i++;
+                } else if (opcode == Program.SPLIT) {
+                    if (top + 2 > stack.length) {
+                        stack = scratch.stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = alternative[pc];
+                    stack[top++] = i;
+                    pc = next[pc];
+                } else if (opcode == Program.JUMP) {
+                    pc = next[pc];
+                } else {
+                    if (i == length) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Scratch {
+        private final long[] visited = new long[MAX_VISITED_BITS / Long.SIZE];
+        int[] stack = new int[64];
+
+        long[] visited(long bits) {
+            Arrays.fill(visited, 0, (int) ((bits + Long.SIZE - 1) / Long.SIZE), 0);
+            return visited;
+        }
+    }
+}
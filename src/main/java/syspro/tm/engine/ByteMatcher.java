@@ -0,0 +1,46 @@
+package syspro.tm.engine;
+
+import syspro.tm.RecordBatch;
+import syspro.tm.StreamMatcher;
+
+import java.util.Arrays;
+
+/**
+ * Compiled form of a single pattern that matches the entire input.
+ */
+@FunctionalInterface
+interface ByteMatcher {
+    boolean matches(byte[] input);
+
+    /**
+     * @return Whether {@code input[from, to)} matches, the default implementation copies the range
+     */
+    default boolean matches(byte[] input, int from, int to) {
+        return matches(Arrays.copyOfRange(input, from, to));
+    }
+
+    /**
+     * Matches all records of the batch at once, see {@link AbstractRegexEngine#matchBatch(Object, RecordBatch, long[])}.
+     *
+     * @return Number of matching records, or -1 to match the records one by one
+     */
+    default int matchBatch(RecordBatch batch, long[] results) {
+        return -1;
+    }
+
+    /**
+     * Matches all windows of the input at once, see {@link AbstractRegexEngine#matchWindows(Object, byte[], int, long[])}.
+     *
+     * @return Number of matching windows, or -1 to match them as a batch
+     */
+    default int matchWindows(byte[] input, int windowSize, long[] results) {
+        return -1;
+    }
+
+    /**
+     * @return Matcher that carries the state of this one across input chunks, or {@code null} if it cannot
+     */
+    default StreamMatcher streamMatcher() {
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package syspro.tm.engine;
+
+import syspro.tm.regex.ByteSet;
+
+/**
+ * Finds the first byte of an input that belongs to a set, so that an engine can skip a run of bytes
+ * that keeps a self-looping state in place with a single call.
+ * <p>
+ * With {@code --add-modules jdk.incubator.vector} the bytes are tested a whole vector at a time,
+ * otherwise one at a time.
+ */
+public abstract class ByteScanner {
+    private static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && VectorByteScanner.isSupported();
+
+    ByteScanner() {
+    }
+
+    /**
+     * @return Vectorized scanner if the Vector API is available, scalar one otherwise
+     */
+    public static ByteScanner of(ByteSet set) {
+        return VECTOR_AVAILABLE ? new VectorByteScanner(set) : new Scalar(set);
+    }
+
+    public static ByteScanner scalar(ByteSet set) {
+        return new Scalar(set);
+    }
+
+    /**
+     * @return Whether {@link #of} returns vectorized scanners
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR_AVAILABLE;
+    }
+
+    /**
+     * @return Index of the first byte of {@code input[from, to)} that belongs to the set, or {@code to} if there is none
+     */
+    public abstract int indexOf(byte[] input, int from, int to);
+
+    static final class Scalar extends ByteScanner {
+        private final boolean[] contains = new boolean[256];
+
+        Scalar(ByteSet set) {
+            for (int b = 0; b < 256; b++) {
+                contains[b] = set.contains(b);
+            }
+        }
+
+        @Override
+        public int indexOf(byte[] input, int from, int to) {
+            final var contains = this.contains;
+            for (int i = from; i < to; i++) {
+                if (contains[Byte.toUnsignedInt(input[i])]) {
+                    return i;
+                }
+            }
+            return to;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package syspro.tm.engine;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.classfile.Label;
+import java.lang.classfile.instruction.SwitchCase;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+
+import static java.lang.constant.ConstantDescs.*;
+
+/**
+ * Translates a {@link Dfa} into a hidden class implementing {@link ByteMatcher}.
+ * The state variable is dispatched with a {@code tableswitch}, every state tests the input byte against
+ * inlined byte ranges instead of loading from a transition table. The generated method matches a range of the input,
+ * so records of a batch are matched in place.
+ * <p>
+ * Hidden classes are defined without {@link MethodHandles.Lookup.ClassOption#STRONG}, so the class is unloaded
+ * as soon as the matcher instance becomes unreachable.
+ */
+final class BytecodeCompiler {
+    /**
+     * HotSpot does not JIT-compile methods with more than 8000 bytes of bytecode ({@code -XX:-DontCompileHugeMethods}).
+     */
+    private static final int MAX_CODE_SIZE = 8000;
+    private static final int RANGE_CODE_SIZE = 22;
+    private static final int STATE_CODE_SIZE = 16;
+    /**
+     * Opcode, up to 3 bytes of alignment padding, default offset, low and high bounds of a {@code tableswitch}.
+     */
+    private static final int SWITCH_HEADER_SIZE = 16;
+    private static final int SWITCH_ENTRY_SIZE = 4;
+
+    private static final ClassDesc CD_BYTE_MATCHER = ClassDesc.of(ByteMatcher.class.getName());
+    private static final ClassDesc CD_GENERATED = ClassDesc.of(BytecodeCompiler.class.getPackageName(), "GeneratedMatcher");
+    private static final MethodTypeDesc MTD_MATCHES = MethodTypeDesc.of(CD_boolean, CD_byte.arrayType());
+    private static final MethodTypeDesc MTD_MATCHES_RANGE = MethodTypeDesc.of(CD_boolean, CD_byte.arrayType(), CD_int, CD_int);
+
+    private static final int INPUT_SLOT = 1;
+    private static final int INDEX_SLOT = 2;
+    private static final int END_SLOT = 3;
+    private static final int STATE_SLOT = 4;
+    private static final int BYTE_SLOT = 5;
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * @return Generated matcher, or {@code null} if the generated method would be too large to be JIT-compiled
+     */
+    static ByteMatcher compile(Dfa dfa) {
+        final var stateCount = dfa.stateCount();
+        final var ranges = new int[stateCount][];
+        // The dispatch on the state and the final accepting test are both tableswitches over all states
+        long codeSize = 2 * (SWITCH_HEADER_SIZE + (long) SWITCH_ENTRY_SIZE * stateCount);
+        for (int state = 1; state < stateCount; state++) {
+            ranges[state] = dfa.ranges(state);
+            codeSize += STATE_CODE_SIZE + (long) RANGE_CODE_SIZE * (ranges[state].length / 3);
+        }
+        if (codeSize > MAX_CODE_SIZE) {
+            return null;
+        }
+
+        final var bytes = ClassFile.of().build(CD_GENERATED, classBuilder -> classBuilder
+                .withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC)
+                .withInterfaceSymbols(CD_BYTE_MATCHER)
+                .withMethodBody(INIT_NAME, MTD_void, ClassFile.ACC_PUBLIC, code -> code
+                        .aload(0)
+                        .invokespecial(CD_Object, INIT_NAME, MTD_void)
+                        .return_())
+                .withMethodBody("matches", MTD_MATCHES, ClassFile.ACC_PUBLIC, code -> code
+                        .aload(0)
+                        .aload(INPUT_SLOT)
+                        .iconst_0()
+                        .aload(INPUT_SLOT)
+                        .arraylength()
+                        .invokevirtual(CD_GENERATED, "matches", MTD_MATCHES_RANGE)
+                        .ireturn())
+                .withMethodBody("matches", MTD_MATCHES_RANGE, ClassFile.ACC_PUBLIC, code -> generateMatches(code, dfa, ranges)));
+
+        try {
+            final var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            final var constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+            return (ByteMatcher) constructor.invoke();
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to define generated matcher", e);
+        }
+    }
+
+    private static void generateMatches(CodeBuilder code, Dfa dfa, int[][] ranges) {
+        final var stateCount = dfa.stateCount();
+        final var loop = code.newLabel();
+        final var end = code.newLabel();
+        final var reject = code.newLabel();
+        final var accept = code.newLabel();
+        final var stateLabels = new Label[stateCount];
+        final var cases = new ArrayList<SwitchCase>();
+        for (int state = 1; state < stateCount; state++) {
+            stateLabels[state] = code.newLabel();
+            cases.add(SwitchCase.of(state, stateLabels[state]));
+        }
+
+        // i = from; state = start
+        code.loadConstant(dfa.startIndex()).istore(STATE_SLOT);
+
+        // while (i < to) { b = input[i++] & 0xFF; switch (state) { ... } }
+        code.labelBinding(loop);
+        code.iload(INDEX_SLOT).iload(END_SLOT).if_icmpge(end);
+        code.aload(INPUT_SLOT).iload(INDEX_SLOT).baload().sipush(0xFF).iand().istore(BYTE_SLOT);
+        code.iinc(INDEX_SLOT, 1);
+        if (cases.isEmpty()) {
+            code.goto_(reject);
+        } else {
+            code.iload(STATE_SLOT).tableswitch(1, stateCount - 1, reject, cases);
+        }
+
+        for (int state = 1; state < stateCount; state++) {
+            code.labelBinding(stateLabels[state]);
+            final var stateRanges = ranges[state];
+            for (int i = 0; i < stateRanges.length; i += 3) {
+                final var first = stateRanges[i];
+                final var last = stateRanges[i + 1];
+                final var target = stateRanges[i + 2];
+                final var nextRange = code.newLabel();
+                // Ranges are sorted, so a byte below the current range is not in any of the following ones
+                if (first != 0) {
+                    code.iload(BYTE_SLOT).sipush(first).if_icmplt(reject);
+                }
+                if (last != Dfa.ALPHABET_SIZE - 1) {
+                    code.iload(BYTE_SLOT).sipush(last).if_icmpgt(nextRange);
+                }
+                if (target != state) {
+                    code.loadConstant(target).istore(STATE_SLOT);
+                }
+                code.goto_(loop);
+                code.labelBinding(nextRange);
+            }
+            code.goto_(reject);
+        }
+
+        // Input is consumed: accept if the current state is accepting
+        code.labelBinding(end);
+        final var acceptingCases = new ArrayList<SwitchCase>();
+        for (int state = 1; state < stateCount; state++) {
+            if (dfa.accepting[state]) {
+                acceptingCases.add(SwitchCase.of(state, accept));
+            }
+        }
+        if (acceptingCases.isEmpty()) {
+            code.goto_(reject);
+        } else {
+            code.iload(STATE_SLOT).tableswitch(1, stateCount - 1, reject, acceptingCases);
+        }
+
+        code.labelBinding(accept);
+        code.iconst_1().ireturn();
+        code.labelBinding(reject);
+        code.iconst_0().ireturn();
+    }
+}
@@ -0,0 +1,49 @@
+package syspro.tm.engine;
+
+import syspro.tm.StreamMatcher;
+import syspro.tm.regex.Regex;
+
+/**
+ * Compiles the minimized DFA of every pattern into its own hidden class, so the JIT optimizes each pattern
+ * separately. DFAs that are too large for that are matched with the {@link FullDfaRegexEngine table-driven DFA},
+ * DFAs that exceed the state limit use the {@link LazyDfaRegexEngine lazy DFA}.
+ */
+public final class BytecodeRegexEngine extends AbstractRegexEngine<ByteMatcher> {
+    @Override
+    ByteMatcher compile(Regex regex) {
+        final Dfa dfa;
+        try {
+            dfa = Dfa.build(Program.compile(regex), FullDfaRegexEngine.DEFAULT_MAX_STATES).minimize();
+        } catch (DfaTooLargeException _) {
+            return new LazyDfa(Program.compile(regex, true), LazyDfaRegexEngine.DEFAULT_CACHE_BUDGET_BYTES);
+        }
+        final var generated = BytecodeCompiler.compile(dfa);
+        return generated != null ? generated : dfa;
+    }
+
+    @Override
+    boolean matches(ByteMatcher compiled, byte[] input) {
+        return compiled.matches(input);
+    }
+
+    @Override
+    boolean matches(ByteMatcher compiled, byte[] input, int from, int to) {
+        return compiled.matches(input, from, to);
+    }
+
+    @Override
+    StreamMatcher streamMatcher(ByteMatcher compiled) {
+        return compiled.streamMatcher();
+    }
+
+    /**
+     * @return Engine the pattern has been compiled for: {@code bytecode}, {@code table-driven DFA} or {@code lazy DFA}
+     */
+    @Override
+    String tierHistory(ByteMatcher compiled) {
+        if (compiled instanceof Dfa) {
+            return "table-driven DFA";
+        }
+        return compiled instanceof LazyDfa ? "lazy DFA" : "bytecode";
+    }
+}
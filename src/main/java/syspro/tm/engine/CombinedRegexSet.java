@@ -0,0 +1,33 @@
+package syspro.tm.engine;
+
+import syspro.tm.RegexSet;
+
+import java.util.BitSet;
+import java.util.function.Function;
+
+/**
+ * {@link RegexSet} compiled into one {@link Program#compileSet program}, so that every input is scanned once
+ * regardless of the number of regexes.
+ */
+final class CombinedRegexSet implements RegexSet {
+    private final Program program;
+    private final Function<byte[], BitSet> matcher;
+
+    /**
+     * @param matcher Returns {@link Program#matchingPatterns} of the program after the entire input
+     */
+    CombinedRegexSet(Program program, Function<byte[], BitSet> matcher) {
+        this.program = program;
+        this.matcher = matcher;
+    }
+
+    @Override
+    public int size() {
+        return program.patternCount();
+    }
+
+    @Override
+    public BitSet matches(byte[] input) {
+        return matcher.apply(input);
+    }
+}
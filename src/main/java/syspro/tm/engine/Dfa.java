@@ -0,0 +1,451 @@
+package syspro.tm.engine;
+
+import syspro.tm.StreamMatcher;
+import syspro.tm.regex.ByteClasses;
+import syspro.tm.regex.ByteSet;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Complete DFA produced by subset construction over the {@link Program} NFA.
+ * State identifiers are offsets of their rows in {@link #table}, state {@link #DEAD} never accepts.
+ * Rows have one entry per {@link Program#classes byte class}.
+ */
+final class Dfa implements ByteMatcher {
+    static final int ALPHABET_SIZE = ByteClasses.ALPHABET_SIZE;
+    static final int DEAD = 0;
+
+    final int[] table;
+    final boolean[] accepting;
+    final int start;
+    /**
+     * Unsigned byte class of every byte value.
+     */
+    final byte[] classes;
+    /**
+     * Length of a transition row, equal to the number of byte classes.
+     */
+    final int stride;
+    /**
+     * Accepting state that loops into itself on every byte, or -1 if there is none.
+     * A minimized DFA has at most one such state.
+     */
+    final int universal;
+    /**
+     * Scanner of the bytes that leave the state at the row offset of every state that loops into itself,
+     * like the {@code .*} before a literal or the loops of {@code [a-zA-Z]+} and {@code \w*}, {@code null} elsewhere.
+     * The array is {@code null} if there are no such states or the Vector API is not available,
+     * since scanning one byte at a time is no faster than the table.
+     */
+    private final ByteScanner[] scanners;
+
+    private Dfa(int[] table, boolean[] accepting, int start, byte[] classes, int stride) {
+        this.table = table;
+        this.accepting = accepting;
+        this.start = start;
+        this.classes = classes;
+        this.stride = stride;
+        this.universal = findUniversal(table, accepting, stride);
+        this.scanners = ByteScanner.isVectorAvailable() ? findScanners() : null;
+    }
+
+    private static int findUniversal(int[] table, boolean[] accepting, int stride) {
+        for (int index = 0; index < accepting.length; index++) {
+            if (!accepting[index]) {
+                continue;
+            }
+            final var row = index * stride;
+            var loops = true;
+            for (int byteClass = 0; byteClass < stride && loops; byteClass++) {
+                loops = table[row + byteClass] == row;
+            }
+            if (loops) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private ByteScanner[] findScanners() {
+        ByteScanner[] result = null;
+        for (int row = stride; row < table.length; row += stride) {
+            if (row == universal) {
+                continue;
+            }
+            var selfLoop = false;
+            for (int b = 0; b < ALPHABET_SIZE && !selfLoop; b++) {
+                selfLoop = target(row, b) == row;
+            }
+            if (!selfLoop) {
+                continue;
+            }
+
+            var exits = ByteSet.EMPTY;
+            int b = 0;
+            while (b < ALPHABET_SIZE) {
+                var end = b;
+                final var loops = target(row, b) == row;
+                while (end + 1 < ALPHABET_SIZE && (target(row, end + 1) == row) == loops) {
+                    end++;
+                }
+                if (!loops) {
+                    exits = exits.union(ByteSet.range(b, end));
+                }
+                b = end + 1;
+            }
+            if (result == null) {
+                result = new ByteScanner[table.length];
+            }
+            result[row] = ByteScanner.of(exits);
+        }
+        return result;
+    }
+
+    int stateCount() {
+        return accepting.length;
+    }
+
+    int startIndex() {
+        return start / stride;
+    }
+
+    private int target(int row, int b) {
+        return table[row + Byte.toUnsignedInt(classes[b])];
+    }
+
+    /**
+     * @return Triples of (first byte, last byte, target state index) for all non-dead transitions of the state
+     * with the given index, sorted by byte
+     */
+    int[] ranges(int index) {
+        final var row = index * stride;
+        final var result = new int[3 * ALPHABET_SIZE];
+        int n = 0;
+        int b = 0;
+        while (b < ALPHABET_SIZE) {
+            final var target = target(row, b);
+            var end = b;
+            while (end + 1 < ALPHABET_SIZE && target(row, end + 1) == target) {
+                end++;
+            }
+            if (target != DEAD) {
+                result[n++] = b;
+                result[n++] = end;
+                result[n++] = target / stride;
+            }
+            b = end + 1;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    @Override
+    public boolean matches(byte[] input) {
+        return matches(input, 0, input.length);
+    }
+
+    @Override
+    public boolean matches(byte[] input, int from, int to) {
+        final var scanners = this.scanners;
+        if (scanners != null) {
+            return matchesScanning(scanners, input, from, to);
+        }
+
+        final var table = this.table;
+        final var classes = this.classes;
+        final var universal = this.universal;
+        var state = start;
+        for (int i = from; i < to; i++) {
+            state = table[state + Byte.toUnsignedInt(classes[Byte.toUnsignedInt(input[i])])];
+            if (state == DEAD) {
+                return false;
+            }
+            if (state == universal) {
+                return true;
+            }
+        }
+        return accepting[state / stride];
+    }
+
+    /**
+     * Like {@link #matches(byte[], int, int)}, but skips the bytes that a self-looping state would consume
+     * with its scanner.
+     */
+    private boolean matchesScanning(ByteScanner[] scanners, byte[] input, int from, int to) {
+        final var table = this.table;
+        final var classes = this.classes;
+        final var universal = this.universal;
+        var state = start;
+        var scanner = scanners[state];
+        for (int i = from; i < to; i++) {
+            if (scanner != null) {
+                i = scanner.indexOf(input, i, to);
+                if (i == to) {
+                    break;
+                }
+            }
+            final var next = table[state + Byte.toUnsignedInt(classes[Byte.toUnsignedInt(input[i])])];
+            if (next == state) {
+                continue;
+            }
+            if (next == DEAD) {
+                return false;
+            }
+            if (next == universal) {
+                return true;
+            }
+            state = next;
+            scanner = scanners[state];
+        }
+        return accepting[state / stride];
+    }
+
+    @Override
+    public StreamMatcher streamMatcher() {
+        return new Streaming(this);
+    }
+
+    /**
+     * @throws DfaTooLargeException if the DFA would have more than {@code maxStates} states
+     */
+    static Dfa build(Program program, int maxStates) {
+        final var stride = program.classes.count();
+        final var size = program.size();
+        final var current = new Threads(program);
+        final var next = new Threads(program);
+        final var stack = new int[2 * size + 1];
+        final var ids = new HashMap<StateKey, Integer>();
+        final var states = new ArrayList<int[]>();
+
+        // Dead state is always present, even if it is unreachable
+        final var dead = new int[0];
+        ids.put(new StateKey(dead), 0);
+        states.add(dead);
+
+        PikeVmRegexEngine.addThread(program, current, program.start, stack);
+        final var startThreads = program.canonicalThreads(current);
+        var start = ids.get(new StateKey(startThreads));
+        if (start == null) {
+            start = 1;
+            ids.put(new StateKey(startThreads), start);
+            states.add(startThreads);
+        }
+
+        var table = new int[16 * stride];
+        for (int index = 0; index < states.size(); index++) {
+            if (table.length < states.size() * stride) {
+                table = Arrays.copyOf(table, Math.max(table.length * 2, states.size() * stride));
+            }
+            final var threads = states.get(index);
+            for (int byteClass = 0; byteClass < stride; byteClass++) {
+                program.loadThreads(threads, current);
+                PikeVmRegexEngine.step(program, current, next, program.classes.representative(byteClass), stack);
+                final var targetThreads = program.canonicalThreads(next);
+                final var key = new StateKey(targetThreads);
+                var target = ids.get(key);
+                if (target == null) {
+                    if (states.size() == maxStates) {
+                        throw new DfaTooLargeException(maxStates);
+                    }
+                    target = states.size();
+                    ids.put(key, target);
+                    states.add(targetThreads);
+                }
+                table[index * stride + byteClass] = target * stride;
+            }
+        }
+
+        final var count = states.size();
+        final var accepting = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            accepting[i] = program.isAccepting(states.get(i));
+        }
+        return new Dfa(Arrays.copyOf(table, count * stride), accepting, start * stride, program.classes.toArray(), stride);
+    }
+
+    /**
+     * Hopcroft's partition refinement: merges all states accepting the same language.
+     */
+    Dfa minimize() {
+        final var n = stateCount();
+
+        // Inverse transitions grouped by (byte class, target state)
+        final var inverseStart = new int[stride * n + 1];
+        for (int state = 0; state < n; state++) {
+            for (int byteClass = 0; byteClass < stride; byteClass++) {
+                final var target = table[state * stride + byteClass] / stride;
+                inverseStart[byteClass * n + target + 1]++;
+            }
+        }
+        for (int i = 0; i < stride * n; i++) {
+            inverseStart[i + 1] += inverseStart[i];
+        }
+        final var inverseSources = new int[stride * n];
+        final var inverseFill = Arrays.copyOf(inverseStart, stride * n);
+        for (int state = 0; state < n; state++) {
+            for (int byteClass = 0; byteClass < stride; byteClass++) {
+                final var target = table[state * stride + byteClass] / stride;
+                inverseSources[inverseFill[byteClass * n + target]++] = state;
+            }
+        }
+
+        // Blocks are contiguous ranges of `elements`, marked states are moved to the front of their block
+        final var elements = new int[n];
+        final var location = new int[n];
+        final var blockOf = new int[n];
+        final var blockStart = new int[n];
+        final var blockEnd = new int[n];
+        final var markedEnd = new int[n];
+        int blockCount = 0;
+
+        int position = 0;
+        for (final var acceptingBlock : new boolean[]{false, true}) {
+            final var first = position;
+            for (int state = 0; state < n; state++) {
+                if (accepting[state] == acceptingBlock) {
+                    elements[position] = state;
+                    location[state] = position;
+                    blockOf[state] = blockCount;
+                    position++;
+                }
+            }
+            if (position != first) {
+                blockStart[blockCount] = first;
+                blockEnd[blockCount] = position;
+                markedEnd[blockCount] = first;
+                blockCount++;
+            }
+        }
+
+        final var worklist = new int[n];
+        final var inWorklist = new boolean[n];
+        int worklistSize = 0;
+        for (int block = 0; block < blockCount; block++) {
+            worklist[worklistSize++] = block;
+            inWorklist[block] = true;
+        }
+
+        final var splitter = new int[n];
+        final var touched = new int[n];
+        while (worklistSize != 0) {
+            final var splitterBlock = worklist[--worklistSize];
+            inWorklist[splitterBlock] = false;
+            final var splitterSize = blockEnd[splitterBlock] - blockStart[splitterBlock];
+            System.arraycopy(elements, blockStart[splitterBlock], splitter, 0, splitterSize);
+
+            for (int byteClass = 0; byteClass < stride; byteClass++) {
+                int touchedCount = 0;
+                for (int i = 0; i < splitterSize; i++) {
+                    final var inverseIndex = byteClass * n + splitter[i];
+                    for (int j = inverseStart[inverseIndex]; j < inverseStart[inverseIndex + 1]; j++) {
+                        final var source = inverseSources[j];
+                        final var block = blockOf[source];
+                        if (markedEnd[block] == blockStart[block]) {
+                            touched[touchedCount++] = block;
+                        }
+                        final var sourceLocation = location[source];
+                        final var markedLocation = markedEnd[block];
+                        if (sourceLocation >= markedLocation) {
+                            final var other = elements[markedLocation];
+                            elements[markedLocation] = source;
+                            location[source] = markedLocation;
+                            elements[sourceLocation] = other;
+                            location[other] = sourceLocation;
+                            markedEnd[block]++;
+                        }
+                    }
+                }
+
+                for (int i = 0; i < touchedCount; i++) {
+                    final var block = touched[i];
+                    if (markedEnd[block] == blockEnd[block]) {
+                        markedEnd[block] = blockStart[block];
+                        continue;
+                    }
+
+                    final var newBlock = blockCount++;
+                    blockStart[newBlock] = blockStart[block];
+                    blockEnd[newBlock] = markedEnd[block];
+                    markedEnd[newBlock] = blockStart[newBlock];
+                    blockStart[block] = blockEnd[newBlock];
+                    markedEnd[block] = blockStart[block];
+                    for (int j = blockStart[newBlock]; j < blockEnd[newBlock]; j++) {
+                        blockOf[elements[j]] = newBlock;
+                    }
+
+                    final var newSize = blockEnd[newBlock] - blockStart[newBlock];
+                    final var oldSize = blockEnd[block] - blockStart[block];
+                    if (inWorklist[block] || newSize <= oldSize) {
+                        worklist[worklistSize++] = newBlock;
+                        inWorklist[newBlock] = true;
+                    } else {
+                        worklist[worklistSize++] = block;
+                        inWorklist[block] = true;
+                    }
+                }
+            }
+        }
+
+        // Renumber blocks so that the dead state stays at 0
+        final var order = new int[blockCount];
+        Arrays.fill(order, -1);
+        final var deadBlock = blockOf[DEAD];
+        order[deadBlock] = 0;
+        int nextIndex = 1;
+        for (int block = 0; block < blockCount; block++) {
+            if (block != deadBlock) {
+                order[block] = nextIndex++;
+            }
+        }
+
+        final var newTable = new int[blockCount * stride];
+        final var newAccepting = new boolean[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            final var representative = elements[blockStart[block]];
+            final var row = order[block] * stride;
+            for (int byteClass = 0; byteClass < stride; byteClass++) {
+                final var target = table[representative * stride + byteClass] / stride;
+                newTable[row + byteClass] = order[blockOf[target]] * stride;
+            }
+            newAccepting[order[block]] = accepting[representative];
+        }
+        return new Dfa(newTable, newAccepting, order[blockOf[start / stride]] * stride, classes, stride);
+    }
+
+    private static final class Streaming implements StreamMatcher {
+        private final Dfa dfa;
+        private int state;
+
+        Streaming(Dfa dfa) {
+            this.dfa = dfa;
+            this.state = dfa.start;
+        }
+
+        @Override
+        public Status feed(ByteBuffer chunk) {
+            final var table = dfa.table;
+            final var classes = dfa.classes;
+            final var universal = dfa.universal;
+            var state = this.state;
+            final var limit = chunk.limit();
+            for (int i = chunk.position(); i < limit && state != DEAD && state != universal; i++) {
+                state = table[state + Byte.toUnsignedInt(classes[Byte.toUnsignedInt(chunk.get(i))])];
+            }
+            chunk.position(limit);
+            this.state = state;
+            if (state == DEAD) {
+                return Status.NO_MATCH;
+            }
+            return state == universal ? Status.MATCH : Status.UNDECIDED;
+        }
+
+        @Override
+        public boolean finish() {
+            final var result = dfa.accepting[state / dfa.stride];
+            state = dfa.start;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package syspro.tm.engine;
+
+/**
+ * Thrown when the subset construction produces more DFA states than allowed.
+ */
+final class DfaTooLargeException extends RuntimeException {
+    DfaTooLargeException(int maxStates) {
+        super("DFA has more than " + maxStates + " states");
+    }
+}
@@ -0,0 +1,53 @@
+package syspro.tm.engine;
+
+import syspro.tm.StreamMatcher;
+import syspro.tm.regex.Regex;
+
+/**
+ * Builds the complete minimized DFA ahead of time, so matching is a single table lookup per input byte.
+ * Patterns whose DFA would exceed the state limit are handled by the {@link LazyDfaRegexEngine lazy DFA}.
+ */
+public final class FullDfaRegexEngine extends AbstractRegexEngine<ByteMatcher> {
+    public static final int DEFAULT_MAX_STATES = 10_000;
+
+    private final int maxStates;
+
+    public FullDfaRegexEngine() {
+        this(DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * @param maxStates Maximum number of DFA states before minimization
+     */
+    public FullDfaRegexEngine(int maxStates) {
+        if (maxStates < 2) {
+            throw new IllegalArgumentException("DFA should be allowed to have at least 2 states: " + maxStates);
+        }
+
+        this.maxStates = maxStates;
+    }
+
+    @Override
+    ByteMatcher compile(Regex regex) {
+        try {
+            return Dfa.build(Program.compile(regex), maxStates).minimize();
+        } catch (DfaTooLargeException _) {
+            return new LazyDfa(Program.compile(regex, true), LazyDfaRegexEngine.DEFAULT_CACHE_BUDGET_BYTES);
+        }
+    }
+
+    @Override
+    boolean matches(ByteMatcher compiled, byte[] input) {
+        return compiled.matches(input);
+    }
+
+    @Override
+    boolean matches(ByteMatcher compiled, byte[] input, int from, int to) {
+        return compiled.matches(input, from, to);
+    }
+
+    @Override
+    StreamMatcher streamMatcher(ByteMatcher compiled) {
+        return compiled.streamMatcher();
+    }
+}
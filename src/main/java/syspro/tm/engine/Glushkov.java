@@ -0,0 +1,438 @@
+package syspro.tm.engine;
+
+import syspro.tm.StreamMatcher;
+import syspro.tm.regex.Regex;
+import syspro.tm.regex.RegexCharacter;
+import syspro.tm.regex.RegexVisitor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Glushkov position automaton: one state per {@link RegexCharacter} leaf (after unrolling bounded repetitions),
+ * every transition into a position is labeled with that position's character.
+ * Sets of active positions are simulated as bit masks.
+ */
+final class Glushkov {
+    static final int ALPHABET_SIZE = 256;
+
+    final int positionCount;
+    final boolean nullable;
+    final BitSet first;
+    final BitSet last;
+    final BitSet[] follow;
+    final RegexCharacter[] characters;
+
+    private Glushkov(int positionCount, boolean nullable, BitSet first, BitSet last, BitSet[] follow, RegexCharacter[] characters) {
+        this.positionCount = positionCount;
+        this.nullable = nullable;
+        this.first = first;
+        this.last = last;
+        this.follow = follow;
+        this.characters = characters;
+    }
+
+    /**
+     * @return Number of positions of the Glushkov automaton, saturated at {@link Long#MAX_VALUE}
+     */
+    static long countPositions(Regex regex) {
+        return regex.accept(new RegexVisitor<>() {
+            @Override
+            public Long visitSingleCharacter(Regex.SingleCharacter node) {
+                return 1L;
+            }
+
+            @Override
+            public Long visitAlternation(Regex.Alternation node) {
+                long count = 0;
+                for (final var option : node) {
+                    count = saturatedAdd(count, option.accept(this));
+                }
+                return count;
+            }
+
+            @Override
+            public Long visitConcatenation(Regex.Concatenation node) {
+                long count = 0;
+                for (final var part : node) {
+                    count = saturatedAdd(count, part.accept(this));
+                }
+                return count;
+            }
+
+            @Override
+            public Long visitRepetition(Regex.Repetition node) {
+                final var copies = node.max != null ? node.max : Math.max(node.min, 1);
+                final var count = node.argument.accept(this);
+                return count > Long.MAX_VALUE / copies ? Long.MAX_VALUE : count * copies;
+            }
+
+            private static long saturatedAdd(long a, long b) {
+                final var sum = a + b;
+                return sum < 0 ? Long.MAX_VALUE : sum;
+            }
+        });
+    }
+
+    static Glushkov build(Regex regex) {
+        final var builder = new Builder();
+        final var root = regex.accept(builder);
+        final var count = builder.characters.size();
+        return new Glushkov(count, root.nullable, root.first, root.last, builder.follow.toArray(BitSet[]::new), builder.characters.toArray(RegexCharacter[]::new));
+    }
+
+    /**
+     * @return For every byte value, {@code words} words of the mask of positions whose character matches it
+     */
+    long[] characterMasks(int words) {
+        final var masks = new long[ALPHABET_SIZE * words];
+        for (int position = 0; position < positionCount; position++) {
+            final var set = characters[position].byteSet();
+            for (int b = 0; b < ALPHABET_SIZE; b++) {
+                if (set.contains(b)) {
+                    masks[b * words + (position >>> 6)] |= 1L << position;
+                }
+            }
+        }
+        return masks;
+    }
+
+    static long[] toWords(BitSet set, int words) {
+        final var result = new long[words];
+        final var array = set.toLongArray();
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    private static final class Node {
+        final boolean nullable;
+        final BitSet first;
+        final BitSet last;
+
+        Node(boolean nullable, BitSet first, BitSet last) {
+            this.nullable = nullable;
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    private static final class Builder implements RegexVisitor<Node> {
+        final ArrayList<RegexCharacter> characters = new ArrayList<>();
+        final ArrayList<BitSet> follow = new ArrayList<>();
+
+        @Override
+        public Node visitSingleCharacter(Regex.SingleCharacter node) {
+            final var position = characters.size();
+            characters.add(node.character);
+            follow.add(new BitSet());
+            final var set = new BitSet();
+            set.set(position);
+            return new Node(false, set, (BitSet) set.clone());
+        }
+
+        @Override
+        public Node visitAlternation(Regex.Alternation node) {
+            var nullable = false;
+            final var first = new BitSet();
+            final var last = new BitSet();
+            for (final var option : node) {
+                final var result = option.accept(this);
+                nullable |= result.nullable;
+                first.or(result.first);
+                last.or(result.last);
+            }
+            return new Node(nullable, first, last);
+        }
+
+        @Override
+        public Node visitConcatenation(Regex.Concatenation node) {
+            var result = new Node(true, new BitSet(), new BitSet());
+            for (final var part : node) {
+                result = concatenate(result, part.accept(this));
+            }
+            return result;
+        }
+
+        @Override
+        public Node visitRepetition(Regex.Repetition node) {
+            final int min = node.min == null ? 0 : node.min;
+            var result = new Node(true, new BitSet(), new BitSet());
+            if (node.max == null) {
+                // x{min,} = x{min - 1}x+, x{0,} = x*
+                for (int i = 1; i < min; i++) {
+                    result = concatenate(result, node.argument.accept(this));
+                }
+                final var loop = node.argument.accept(this);
+                loop.last.stream().forEach(position -> follow.get(position).or(loop.first));
+                return concatenate(result, new Node(min == 0 || loop.nullable, loop.first, loop.last));
+            }
+
+            for (int i = 0; i < min; i++) {
+                result = concatenate(result, node.argument.accept(this));
+            }
+            // x{0,k} = x?x?...x? (k times) accepts exactly the same language
+            for (int i = min; i < node.max; i++) {
+                final var optional = node.argument.accept(this);
+                result = concatenate(result, new Node(true, optional.first, optional.last));
+            }
+            return result;
+        }
+
+        private Node concatenate(Node left, Node right) {
+            left.last.stream().forEach(position -> follow.get(position).or(right.first));
+            final var first = (BitSet) left.first.clone();
+            if (left.nullable) {
+                first.or(right.first);
+            }
+            final var last = (BitSet) right.last.clone();
+            if (right.nullable) {
+                last.or(left.last);
+            }
+            return new Node(left.nullable && right.nullable, first, last);
+        }
+    }
+
+    /**
+     * Shift-And style simulation for automata of at most 64 positions: the active set is a single {@code long},
+     * the union of follow sets is looked up 8 positions at a time.
+     */
+    static final class SingleWordMatcher implements ByteMatcher {
+        static final int MAX_POSITIONS = Long.SIZE;
+
+        private final long[] characterMasks;
+        private final long[] followTables;
+        private final int chunks;
+        private final long first;
+        private final long last;
+        private final boolean nullable;
+
+        SingleWordMatcher(Glushkov automaton) {
+            final var positionCount = automaton.positionCount;
+            if (positionCount > MAX_POSITIONS) {
+                throw new IllegalArgumentException("Too many positions for a single word: " + positionCount);
+            }
+
+            characterMasks = automaton.characterMasks(1);
+            chunks = (positionCount + Byte.SIZE - 1) / Byte.SIZE;
+            followTables = new long[chunks * ALPHABET_SIZE];
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                final var offset = chunk * ALPHABET_SIZE;
+                for (int bits = 1; bits < ALPHABET_SIZE; bits++) {
+                    final var position = chunk * Byte.SIZE + Integer.numberOfTrailingZeros(bits);
+                    final var followMask = position < positionCount ? toWords(automaton.follow[position], 1)[0] : 0;
+                    followTables[offset + bits] = followTables[offset + (bits & (bits - 1))] | followMask;
+                }
+            }
+            first = toWords(automaton.first, 1)[0];
+            last = toWords(automaton.last, 1)[0];
+            nullable = automaton.nullable;
+        }
+
+        @Override
+        public boolean matches(byte[] input) {
+            return matches(input, 0, input.length);
+        }
+
+        @Override
+        public boolean matches(byte[] input, int from, int to) {
+            if (from == to) {
+                return nullable;
+            }
+
+            final var characterMasks = this.characterMasks;
+            var active = first & characterMasks[Byte.toUnsignedInt(input[from])];
+            for (int i = from + 1; i < to; i++) {
+                if (active == 0) {
+                    return false;
+                }
+                active = follow(active) & characterMasks[Byte.toUnsignedInt(input[i])];
+            }
+            return (active & last) != 0;
+        }
+
+        /**
+         * @return Union of the follow sets of the active positions
+         */
+        private long follow(long active) {
+            final var followTables = this.followTables;
+            long result = 0;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                result |= followTables[chunk * ALPHABET_SIZE + (int) ((active >>> (chunk * Byte.SIZE)) & 0xFF)];
+            }
+            return result;
+        }
+
+        @Override
+        public StreamMatcher streamMatcher() {
+            return new Streaming();
+        }
+
+        /**
+         * Carries the active set across chunks, an empty active set after the first byte is the dead state.
+         */
+        private final class Streaming implements StreamMatcher {
+            private boolean started;
+            private long active;
+
+            @Override
+            public Status feed(ByteBuffer chunk) {
+                final var characterMasks = SingleWordMatcher.this.characterMasks;
+                var active = this.active;
+                var i = chunk.position();
+                final var limit = chunk.limit();
+                if (!started && i < limit) {
+                    active = first & characterMasks[Byte.toUnsignedInt(chunk.get(i++))];
+                    started = true;
+                }
+                for (; i < limit && active != 0; i++) {
+                    active = follow(active) & characterMasks[Byte.toUnsignedInt(chunk.get(i))];
+                }
+                chunk.position(limit);
+                this.active = active;
+                return started && active == 0 ? Status.NO_MATCH : Status.UNDECIDED;
+            }
+
+            @Override
+            public boolean finish() {
+                final var result = started ? (active & last) != 0 : nullable;
+                started = false;
+                active = 0;
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Multi-word variant for mid-sized automata: follow sets are unioned word by word for every active position.
+     */
+    static final class MultiWordMatcher implements ByteMatcher {
+        static final int MAX_POSITIONS = 4096;
+
+        private final int words;
+        private final long[] characterMasks;
+        private final long[] followMasks;
+        private final long[] first;
+        private final long[] last;
+        private final boolean nullable;
+
+        MultiWordMatcher(Glushkov automaton) {
+            final var positionCount = automaton.positionCount;
+            if (positionCount > MAX_POSITIONS) {
+                throw new IllegalArgumentException("Too many positions: " + positionCount);
+            }
+
+            words = Math.max(1, (positionCount + Long.SIZE - 1) / Long.SIZE);
+            characterMasks = automaton.characterMasks(words);
+            followMasks = new long[positionCount * words];
+            for (int position = 0; position < positionCount; position++) {
+                System.arraycopy(toWords(automaton.follow[position], words), 0, followMasks, position * words, words);
+            }
+            first = toWords(automaton.first, words);
+            last = toWords(automaton.last, words);
+            nullable = automaton.nullable;
+        }
+
+        @Override
+        public boolean matches(byte[] input) {
+            return matches(input, 0, input.length);
+        }
+
+        @Override
+        public boolean matches(byte[] input, int from, int to) {
+            if (from == to) {
+                return nullable;
+            }
+
+            final var words = this.words;
+            final var active = new long[words];
+            final var next = new long[words];
+            var any = and(first, characterMasks, Byte.toUnsignedInt(input[from]) * words, active);
+            for (int i = from + 1; i < to; i++) {
+                if (!any) {
+                    return false;
+                }
+                follow(active, next);
+                any = and(next, characterMasks, Byte.toUnsignedInt(input[i]) * words, active);
+            }
+            return isAccepting(active);
+        }
+
+        /**
+         * Stores the union of the follow sets of the active positions to {@code next}.
+         */
+        private void follow(long[] active, long[] next) {
+            final var words = this.words;
+            Arrays.fill(next, 0);
+            for (int word = 0; word < words; word++) {
+                var bits = active[word];
+                while (bits != 0) {
+                    final var position = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    final var offset = position * words;
+                    for (int j = 0; j < words; j++) {
+                        next[j] |= followMasks[offset + j];
+                    }
+                }
+            }
+        }
+
+        private boolean isAccepting(long[] active) {
+            for (int word = 0; word < words; word++) {
+                if ((active[word] & last[word]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public StreamMatcher streamMatcher() {
+            return new Streaming();
+        }
+
+        /**
+         * Carries the active set across chunks, an empty active set after the first byte is the dead state.
+         */
+        private final class Streaming implements StreamMatcher {
+            private final long[] active = new long[words];
+            private final long[] next = new long[words];
+            private boolean started;
+            private boolean any;
+
+            @Override
+            public Status feed(ByteBuffer chunk) {
+                var i = chunk.position();
+                final var limit = chunk.limit();
+                if (!started && i < limit) {
+                    any = and(first, characterMasks, Byte.toUnsignedInt(chunk.get(i++)) * words, active);
+                    started = true;
+                }
+                for (; i < limit && any; i++) {
+                    follow(active, next);
+                    any = and(next, characterMasks, Byte.toUnsignedInt(chunk.get(i)) * words, active);
+                }
+                chunk.position(limit);
+                return started && !any ? Status.NO_MATCH : Status.UNDECIDED;
+            }
+
+            @Override
+            public boolean finish() {
+                final var result = started ? isAccepting(active) : nullable;
+                started = false;
+                return result;
+            }
+        }
+
+        private static boolean and(long[] left, long[] right, int rightOffset, long[] result) {
+            long any = 0;
+            for (int word = 0; word < result.length; word++) {
+                final var value = left[word] & right[rightOffset + word];
+                result[word] = value;
+                any |= value;
+            }
+            return any != 0;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package syspro.tm.engine;
+
+import syspro.tm.StreamMatcher;
+import syspro.tm.regex.Regex;
+
+/**
+ * Bit-parallel simulation of the {@link Glushkov} position automaton.
+ * Patterns of up to 64 positions run allocation-free on a single {@code long},
+ * larger ones use a multi-word mask, and anything above that is handled by the {@link LazyDfaRegexEngine lazy DFA}.
+ */
+public final class GlushkovRegexEngine extends AbstractRegexEngine<ByteMatcher> {
+    @Override
+    ByteMatcher compile(Regex regex) {
+        final var positions = Glushkov.countPositions(regex);
+        if (positions <= Glushkov.SingleWordMatcher.MAX_POSITIONS) {
+            return new Glushkov.SingleWordMatcher(Glushkov.build(regex));
+        }
+        if (positions <= Glushkov.MultiWordMatcher.MAX_POSITIONS) {
+            return new Glushkov.MultiWordMatcher(Glushkov.build(regex));
+        }
+        return new LazyDfa(Program.compile(regex, true), LazyDfaRegexEngine.DEFAULT_CACHE_BUDGET_BYTES);
+    }
+
+    @Override
+    boolean matches(ByteMatcher compiled, byte[] input) {
+        return compiled.matches(input);
+    }
+
+    @Override
+    boolean matches(ByteMatcher compiled, byte[] input, int from, int to) {
+        return compiled.matches(input, from, to);
+    }
+
+    @Override
+    StreamMatcher streamMatcher(ByteMatcher compiled) {
+        return compiled.streamMatcher();
+    }
+}
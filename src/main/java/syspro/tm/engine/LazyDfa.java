@@ -0,0 +1,427 @@
+package syspro.tm.engine;
+
+import syspro.tm.StreamMatcher;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * DFA built on demand from the {@link Program} NFA. Every thread owns a bounded {@link Cache} of DFA states;
+ * a warmed cache costs one table lookup per input byte.
+ * Transition rows are indexed by {@link Program#classes byte class}, so each row has one entry per class.
+ * All thread lists that accept every continuation share one state, so the search stops as soon as it is reached.
+ * For a {@link Program#compileSet set program} every state also records which regexes it accepts.
+ * Once a regex matches every continuation, it is recorded on the transition and its accepting threads are dropped
+ * from the target state, so that states do not multiply with every combination of regexes matched so far.
+ */
+final class LazyDfa implements ByteMatcher {
+    static final int UNKNOWN = -1;
+    static final int DEAD = 0;
+    /**
+     * Estimated fixed cost of a single cached state besides its transition row and thread list.
+     */
+    private static final int STATE_OVERHEAD_BYTES = 96;
+    /**
+     * Minimum amount of input bytes that has to be scanned between two cache resets during a single search,
+     * otherwise the cache is considered thrashing and the search continues with NFA simulation.
+     */
+    private static final int MIN_BYTES_PER_STATE = 10;
+    /**
+     * A reset keeps the dead, universal, start and current states and needs room for one more.
+     */
+    private static final int MIN_CAPACITY = 5;
+
+    final Program program;
+    private final byte[] classes;
+    /**
+     * Length of a transition row, equal to the number of byte classes.
+     */
+    private final int stride;
+    /**
+     * State that accepts every continuation, or {@link #UNKNOWN} if the program cannot reach one.
+     * Set programs never stop early, since a regex that has not matched yet may still match.
+     */
+    private final int match;
+    private final long cacheBudgetBytes;
+    private final ThreadLocal<Cache> caches = ThreadLocal.withInitial(() -> new Cache(this));
+
+    LazyDfa(Program program, long cacheBudgetBytes) {
+        this.program = program;
+        this.classes = program.classes.toArray();
+        this.stride = program.classes.count();
+        this.match = program.patternCount() == 1 && program.universalInstruction() >= 0 ? stride : UNKNOWN;
+        this.cacheBudgetBytes = cacheBudgetBytes;
+    }
+
+    @Override
+    public boolean matches(byte[] input) {
+        return matches(input, 0, input.length);
+    }
+
+    @Override
+    public boolean matches(byte[] input, int from, int to) {
+        final var cache = caches.get();
+        final var classes = this.classes;
+        final var match = this.match;
+        var table = cache.table;
+        var state = cache.start;
+        int resetPosition = -1;
+        for (int i = from; i < to; i++) {
+            final var byteClass = Byte.toUnsignedInt(classes[Byte.toUnsignedInt(input[i])]);
+            var target = table[state + byteClass];
+            if (target == UNKNOWN) {
+                target = cache.computeTransition(state, byteClass);
+                if (target == UNKNOWN) {
+                    if (resetPosition >= 0 && i - resetPosition < MIN_BYTES_PER_STATE * cache.count) {
+                        return cache.simulate(state, input, i, to);
+                    }
+                    resetPosition = i;
+                    state = cache.reset(state);
+                    target = cache.computeTransition(state, byteClass);
+                }
+                table = cache.table;
+            }
+            state = target;
+            if (state == DEAD) {
+                return false;
+            }
+            if (state == match) {
+                return true;
+            }
+        }
+        return cache.accepting[state / stride];
+    }
+
+    /**
+     * @return Indices of the regexes of the {@link Program#compileSet set program} that match the entire input
+     */
+    BitSet matchingPatterns(byte[] input) {
+        if (program.patternCount() == 1) {
+            final var result = new BitSet(1);
+            result.set(0, matches(input));
+            return result;
+        }
+
+        final var cache = caches.get();
+        final var classes = this.classes;
+        var table = cache.table;
+        var decided = cache.decided;
+        var state = cache.start;
+        final var result = new BitSet();
+        int resetPosition = -1;
+        final var length = input.length;
+        for (int i = 0; i < length; i++) {
+            final var byteClass = Byte.toUnsignedInt(classes[Byte.toUnsignedInt(input[i])]);
+            var target = table[state + byteClass];
+            if (target == UNKNOWN) {
+                target = cache.computeTransition(state, byteClass);
+                if (target == UNKNOWN) {
+                    if (resetPosition >= 0 && i - resetPosition < MIN_BYTES_PER_STATE * cache.count) {
+                        result.or(cache.simulateSet(state, input, i, length));
+                        return result;
+                    }
+                    resetPosition = i;
+                    state = cache.reset(state);
+                    target = cache.computeTransition(state, byteClass);
+                }
+                table = cache.table;
+                decided = cache.decided;
+            }
+            final var patterns = decided[state + byteClass];
+            if (patterns != null) {
+                result.or(patterns);
+            }
+            state = target;
+            if (state == DEAD) {
+                return result;
+            }
+        }
+        result.or(cache.patterns(state));
+        return result;
+    }
+
+    /**
+     * @return Stream matcher with a cache of its own, so that its state survives other searches on the same thread
+     */
+    @Override
+    public StreamMatcher streamMatcher() {
+        return new Streaming(this);
+    }
+
+    private static final class Streaming implements StreamMatcher {
+        private final LazyDfa dfa;
+        private final Cache cache;
+        private int state;
+        private long position;
+        private long resetPosition = -1;
+        /**
+         * NFA simulation that replaces the DFA for the rest of the input once the cache thrashes.
+         */
+        private PikeVmRegexEngine.Streaming simulation;
+
+        Streaming(LazyDfa dfa) {
+            this.dfa = dfa;
+            this.cache = new Cache(dfa);
+            this.state = cache.start;
+        }
+
+        @Override
+        public Status feed(ByteBuffer chunk) {
+            if (simulation != null) {
+                return simulation.feed(chunk);
+            }
+
+            final var cache = this.cache;
+            final var classes = dfa.classes;
+            final var match = dfa.match;
+            var table = cache.table;
+            var state = this.state;
+            final var from = chunk.position();
+            final var limit = chunk.limit();
+            for (int i = from; i < limit && state != DEAD && state != match; i++) {
+                final var byteClass = Byte.toUnsignedInt(classes[Byte.toUnsignedInt(chunk.get(i))]);
+                var target = table[state + byteClass];
+                if (target == UNKNOWN) {
+                    target = cache.computeTransition(state, byteClass);
+                    if (target == UNKNOWN) {
+                        final var offset = position + (i - from);
+                        if (resetPosition >= 0 && offset - resetPosition < (long) MIN_BYTES_PER_STATE * cache.count) {
+                            simulation = new PikeVmRegexEngine.Streaming(dfa.program, false);
+                            simulation.load(cache.threads[state / dfa.stride]);
+                            chunk.position(i);
+                            return simulation.feed(chunk);
+                        }
+                        resetPosition = offset;
+                        state = cache.reset(state);
+                        target = cache.computeTransition(state, byteClass);
+                    }
+                    table = cache.table;
+                }
+                state = target;
+            }
+            position += limit - from;
+            chunk.position(limit);
+            this.state = state;
+            if (state == DEAD) {
+                return Status.NO_MATCH;
+            }
+            return state == match ? Status.MATCH : Status.UNDECIDED;
+        }
+
+        @Override
+        public boolean finish() {
+            final boolean result;
+            if (simulation != null) {
+                result = simulation.finish();
+                simulation = null;
+            } else {
+                result = cache.accepting[state / dfa.stride];
+            }
+            state = cache.start;
+            position = 0;
+            resetPosition = -1;
+            return result;
+        }
+    }
+
+    private static final class Cache {
+        private final Program program;
+        private final int stride;
+        private final int match;
+        /**
+         * Thread list of the {@link LazyDfa#match} state, standing in for all universal thread lists.
+         */
+        private final int[] matchThreads;
+        /**
+         * Maximum number of states, reached only if their thread lists are short.
+         */
+        private final int capacity;
+        private final long budgetBytes;
+        /**
+         * Estimated memory used by the cached states, thread lists are accounted at their actual length.
+         */
+        private long usedBytes;
+        private final HashMap<StateKey, Integer> states = new HashMap<>();
+        private final Threads current;
+        private final Threads next;
+        private final int[] stack;
+        private int[] table;
+        private boolean[] accepting;
+        private int[][] threads;
+        /**
+         * {@link Program#matchingPatterns} of every state, computed on first use.
+         */
+        private BitSet[] patterns;
+        /**
+         * Regexes of a set program that every continuation matches after the transition, indexed like {@link #table}.
+         * {@code null} for single regexes.
+         */
+        private BitSet[] decided;
+        private int count;
+        private int start;
+
+        Cache(LazyDfa dfa) {
+            program = dfa.program;
+            stride = dfa.stride;
+            match = dfa.match;
+            final var size = program.size();
+            budgetBytes = dfa.cacheBudgetBytes;
+            capacity = (int) Math.clamp(budgetBytes / stateBytes(0), MIN_CAPACITY, Integer.MAX_VALUE / stride);
+            current = new Threads(program);
+            next = new Threads(program);
+            stack = new int[2 * size + 1];
+            final var initialCapacity = Math.min(capacity, 16);
+            table = new int[initialCapacity * stride];
+            accepting = new boolean[initialCapacity];
+            threads = new int[initialCapacity][];
+            patterns = new BitSet[initialCapacity];
+            decided = program.patternCount() > 1 ? new BitSet[initialCapacity * stride] : null;
+            if (match != UNKNOWN) {
+                current.clear();
+                PikeVmRegexEngine.addThread(program, current, program.universalInstruction(), stack);
+                PikeVmRegexEngine.addThread(program, current, program.match, stack);
+                matchThreads = program.canonicalThreads(current);
+            } else {
+                matchThreads = null;
+            }
+            clear();
+            current.clear();
+            PikeVmRegexEngine.addThread(program, current, program.start, stack);
+            start = intern(current);
+        }
+
+        private void clear() {
+            states.clear();
+            count = 0;
+            usedBytes = 0;
+            Arrays.fill(table, UNKNOWN);
+            Arrays.fill(patterns, null);
+            if (decided != null) {
+                Arrays.fill(decided, null);
+            }
+            current.clear();
+            // Dead state loops into itself on every byte
+            intern(current);
+            Arrays.fill(table, 0, stride, DEAD);
+            if (matchThreads != null) {
+                // Universal state loops into itself on every byte
+                add(new StateKey(matchThreads), matchThreads);
+                Arrays.fill(table, match, match + stride, match);
+            }
+        }
+
+        /**
+         * @return Target state on any byte of the class, or {@link #UNKNOWN} if the cache is full and has to be {@link #reset}
+         */
+        int computeTransition(int state, int byteClass) {
+            load(state, current);
+            PikeVmRegexEngine.step(program, current, next, program.classes.representative(byteClass), stack);
+            var pcs = program.canonicalThreads(next);
+            BitSet universal = null;
+            if (decided != null) {
+                universal = program.universalPatterns(pcs);
+                if (universal.isEmpty()) {
+                    universal = null;
+                } else {
+                    pcs = program.withoutMatches(pcs, universal);
+                }
+            }
+            final var target = intern(pcs);
+            if (target != UNKNOWN) {
+                table[state + byteClass] = target;
+                if (universal != null) {
+                    decided[state + byteClass] = universal;
+                }
+            }
+            return target;
+        }
+
+        /**
+         * Drops all cached states except the start state and the given one.
+         *
+         * @return New identifier of the given state
+         */
+        int reset(int state) {
+            final var saved = threads[state / stride];
+            final var startThreads = threads[start / stride];
+            clear();
+            start = intern(startThreads);
+            return intern(saved);
+        }
+
+        boolean simulate(int state, byte[] input, int from, int to) {
+            load(state, current);
+            return PikeVmRegexEngine.run(program, current, next, input, from, to, stack);
+        }
+
+        BitSet simulateSet(int state, byte[] input, int from, int to) {
+            load(state, current);
+            return program.matchingPatterns(PikeVmRegexEngine.advance(program, current, next, input, from, to, stack));
+        }
+
+        /**
+         * @return Copy of the indices of the regexes that the state accepts
+         */
+        BitSet patterns(int state) {
+            final var index = state / stride;
+            var result = patterns[index];
+            if (result == null) {
+                result = program.matchingPatterns(threads[index]);
+                patterns[index] = result;
+            }
+            return (BitSet) result.clone();
+        }
+
+        private void load(int state, Threads set) {
+            program.loadThreads(threads[state / stride], set);
+        }
+
+        private int intern(Threads set) {
+            return intern(program.canonicalThreads(set));
+        }
+
+        private int intern(int[] pcs) {
+            final var key = new StateKey(pcs);
+            final var existing = states.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if (match != UNKNOWN && program.isUniversal(pcs)) {
+                return match;
+            }
+            return add(key, pcs);
+        }
+
+        private long stateBytes(int canonicalLength) {
+            return (long) stride * Integer.BYTES + (long) canonicalLength * Integer.BYTES + STATE_OVERHEAD_BYTES;
+        }
+
+        private int add(StateKey key, int[] pcs) {
+            final var bytes = stateBytes(pcs.length);
+            if (count == capacity || (count >= MIN_CAPACITY && usedBytes + bytes > budgetBytes)) {
+                return UNKNOWN;
+            }
+            if (count == accepting.length) {
+                final var newLength = (int) Math.min((long) count * 2, capacity);
+                final var oldTableLength = table.length;
+                table = Arrays.copyOf(table, newLength * stride);
+                Arrays.fill(table, oldTableLength, table.length, UNKNOWN);
+                if (decided != null) {
+                    decided = Arrays.copyOf(decided, newLength * stride);
+                }
+                accepting = Arrays.copyOf(accepting, newLength);
+                threads = Arrays.copyOf(threads, newLength);
+                patterns = Arrays.copyOf(patterns, newLength);
+            }
+            usedBytes += bytes;
+            final var index = count++;
+            final var id = index * stride;
+            threads[index] = pcs;
+            accepting[index] = program.isAccepting(pcs);
+            states.put(key, id);
+            return id;
+        }
+    }
+}
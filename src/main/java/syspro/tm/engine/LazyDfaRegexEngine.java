@@ -0,0 +1,69 @@
+package syspro.tm.engine;
+
+import syspro.tm.RegexSet;
+import syspro.tm.StreamMatcher;
+import syspro.tm.regex.Regex;
+
+import java.util.List;
+
+/**
+ * Lazily constructed DFA over the {@link Program} NFA with a bounded per-thread state cache.
+ * When the cache fills up it is cleared and rebuilt; if that happens too often during a single search,
+ * the rest of the input is handled by {@link PikeVmRegexEngine NFA simulation}.
+ * Regex sets share one lazy DFA whose states record the regexes they accept.
+ */
+public final class LazyDfaRegexEngine extends AbstractRegexEngine<LazyDfa> {
+    public static final long DEFAULT_CACHE_BUDGET_BYTES = 2L * 1024 * 1024;
+    /**
+     * Upper bound of the scaled cache budget of a regex set, each matching thread has its own cache.
+     */
+    public static final long SET_CACHE_LIMIT_BYTES = 32L * 1024 * 1024;
+
+    private final long cacheBudgetBytes;
+
+    public LazyDfaRegexEngine() {
+        this(DEFAULT_CACHE_BUDGET_BYTES);
+    }
+
+    /**
+     * @param cacheBudgetBytes Approximate memory limit of the DFA state cache of a single pattern per thread.
+     *                         The cache of a regex set gets the limits of all its patterns added up,
+     *                         but no more than {@link #SET_CACHE_LIMIT_BYTES} unless a single limit is already larger
+     */
+    public LazyDfaRegexEngine(long cacheBudgetBytes) {
+        if (cacheBudgetBytes <= 0) {
+            throw new IllegalArgumentException("Cache budget should be positive: " + cacheBudgetBytes);
+        }
+
+        this.cacheBudgetBytes = cacheBudgetBytes;
+    }
+
+    @Override
+    LazyDfa compile(Regex regex) {
+        return new LazyDfa(Program.compile(regex, true), cacheBudgetBytes);
+    }
+
+    @Override
+    RegexSet compileSet(List<Regex> regexes) {
+        final var count = regexes.size();
+        final var scaled = cacheBudgetBytes > SET_CACHE_LIMIT_BYTES / count ? SET_CACHE_LIMIT_BYTES : cacheBudgetBytes * count;
+        final var budget = Math.max(cacheBudgetBytes, scaled);
+        final var dfa = new LazyDfa(Program.compileSet(regexes), budget);
+        return new CombinedRegexSet(dfa.program, dfa::matchingPatterns);
+    }
+
+    @Override
+    boolean matches(LazyDfa compiled, byte[] input) {
+        return compiled.matches(input);
+    }
+
+    @Override
+    boolean matches(LazyDfa compiled, byte[] input, int from, int to) {
+        return compiled.matches(input, from, to);
+    }
+
+    @Override
+    StreamMatcher streamMatcher(LazyDfa compiled) {
+        return compiled.streamMatcher();
+    }
+}
@@ -0,0 +1,233 @@
+package syspro.tm.engine;
+
+import syspro.tm.regex.Regex;
+import syspro.tm.regex.RegexVisitor;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Computes literal strings every match of a {@link Regex} has to start with, end with or contain.
+ * Literals are Latin-1 strings, one {@code char} per byte. A set containing the empty string carries no information.
+ */
+public final class LiteralAnalysis implements RegexVisitor<LiteralAnalysis.Literals> {
+    /**
+     * Character classes with more members than that are not expanded into literals.
+     */
+    public static final int MAX_CLASS_SIZE = 4;
+    public static final int MAX_SET_SIZE = 16;
+    public static final int MAX_LITERAL_LENGTH = 64;
+
+    private static final Set<String> ANY = Set.of("");
+
+    public static Literals analyze(Regex regex) {
+        return regex.accept(new LiteralAnalysis());
+    }
+
+    public static final class Literals {
+        /**
+         * All strings of the language, or {@code null} if it is not a small finite set.
+         */
+        public final Set<String> exact;
+        /**
+         * Every match starts with one of these.
+         */
+        public final Set<String> prefixes;
+        /**
+         * Every match ends with one of these.
+         */
+        public final Set<String> suffixes;
+        /**
+         * Every match contains one of these.
+         */
+        public final Set<String> inner;
+
+        private Literals(Set<String> exact) {
+            this(exact, exact, exact, exact);
+        }
+
+        private Literals(Set<String> exact, Set<String> prefixes, Set<String> suffixes, Set<String> inner) {
+            this.exact = exact;
+            this.prefixes = prefixes;
+            this.suffixes = suffixes;
+            this.inner = inner;
+        }
+
+        public static boolean isTrivial(Set<String> literals) {
+            return literals.contains("");
+        }
+    }
+
+    @Override
+    public Literals visitSingleCharacter(Regex.SingleCharacter node) {
+        final var set = node.character.byteSet();
+        if (set.size() > MAX_CLASS_SIZE) {
+            return new Literals(null, ANY, ANY, ANY);
+        }
+        final var members = new LinkedHashSet<String>();
+        for (int b = 0; b < 256; b++) {
+            if (set.contains(b)) {
+                members.add(String.valueOf((char) b));
+            }
+        }
+        return new Literals(members);
+    }
+
+    @Override
+    public Literals visitConcatenation(Regex.Concatenation node) {
+        var result = new Literals(ANY);
+        for (final var part : node) {
+            result = concatenate(result, part.accept(this));
+        }
+        return result;
+    }
+
+    @Override
+    public Literals visitAlternation(Regex.Alternation node) {
+        Set<String> exact = new LinkedHashSet<>();
+        final var prefixes = new LinkedHashSet<String>();
+        final var suffixes = new LinkedHashSet<String>();
+        final var inner = new LinkedHashSet<String>();
+        for (final var option : node) {
+            final var literals = option.accept(this);
+            if (exact != null && literals.exact != null) {
+                exact.addAll(literals.exact);
+            } else {
+                exact = null;
+            }
+            prefixes.addAll(literals.prefixes);
+            suffixes.addAll(literals.suffixes);
+            inner.addAll(literals.inner);
+        }
+        if (exact != null && exact.size() <= MAX_SET_SIZE) {
+            return new Literals(exact);
+        }
+        return new Literals(null, shrinkPrefixes(prefixes), shrinkSuffixes(suffixes), inner.size() <= MAX_SET_SIZE && !Literals.isTrivial(inner) ? inner : ANY);
+    }
+
+    @Override
+    public Literals visitRepetition(Regex.Repetition node) {
+        final var argument = node.argument.accept(this);
+        final int min = node.min == null ? 0 : node.min;
+        if (argument.exact != null && node.max != null && node.max <= MAX_LITERAL_LENGTH) {
+            // x{min,max} = x^min | ... | x^max
+            Set<String> power = ANY;
+            Set<String> exact = new LinkedHashSet<>();
+            for (int i = 0; i <= node.max && exact != null; i++) {
+                if (i >= min) {
+                    exact.addAll(power);
+                    if (exact.size() > MAX_SET_SIZE) {
+                        exact = null;
+                    }
+                }
+                if (i < node.max) {
+                    power = cross(power, argument.exact);
+                    if (power == null) {
+                        exact = null;
+                    }
+                }
+            }
+            if (exact != null) {
+                return new Literals(exact);
+            }
+        }
+        if (min == 0) {
+            return new Literals(null, ANY, ANY, ANY);
+        }
+        return new Literals(null, argument.prefixes, argument.suffixes, argument.inner);
+    }
+
+    private static Literals concatenate(Literals left, Literals right) {
+        final var exact = left.exact != null && right.exact != null ? cross(left.exact, right.exact) : null;
+        if (exact != null) {
+            return new Literals(exact);
+        }
+
+        var prefixes = left.prefixes;
+        if (left.exact != null) {
+            final var crossed = cross(left.exact, right.prefixes);
+            prefixes = crossed != null ? crossed : left.exact;
+        }
+        var suffixes = right.suffixes;
+        if (right.exact != null) {
+            final var crossed = cross(left.suffixes, right.exact);
+            suffixes = crossed != null ? crossed : right.exact;
+        }
+        var inner = best(left.inner, right.inner);
+        final var spanning = cross(left.suffixes, right.prefixes);
+        if (spanning != null) {
+            inner = best(inner, spanning);
+        }
+        inner = best(inner, best(prefixes, suffixes));
+        return new Literals(null, prefixes, suffixes, inner);
+    }
+
+    /**
+     * @return All concatenations of a string from {@code left} with a string from {@code right},
+     * or {@code null} if there are too many of them or they are too long
+     */
+    private static Set<String> cross(Set<String> left, Set<String> right) {
+        if ((long) left.size() * right.size() > MAX_SET_SIZE) {
+            return null;
+        }
+        final var result = new LinkedHashSet<String>();
+        for (final var a : left) {
+            for (final var b : right) {
+                if (a.length() + b.length() > MAX_LITERAL_LENGTH) {
+                    return null;
+                }
+                result.add(a + b);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Prefers the set whose shortest literal is the longest, then the smaller set.
+     */
+    private static Set<String> best(Set<String> a, Set<String> b) {
+        final var scoreA = minLength(a);
+        final var scoreB = minLength(b);
+        if (scoreA != scoreB) {
+            return scoreA > scoreB ? a : b;
+        }
+        return a.size() <= b.size() ? a : b;
+    }
+
+    private static int minLength(Collection<String> literals) {
+        var result = Integer.MAX_VALUE;
+        for (final var literal : literals) {
+            result = Math.min(result, literal.length());
+        }
+        return result;
+    }
+
+    private static Set<String> shrinkPrefixes(Set<String> prefixes) {
+        var result = prefixes;
+        var length = minLength(prefixes);
+        while (result.size() > MAX_SET_SIZE && length > 0) {
+            length--;
+            final var truncated = new LinkedHashSet<String>();
+            for (final var prefix : result) {
+                truncated.add(prefix.substring(0, Math.min(length, prefix.length())));
+            }
+            result = truncated;
+        }
+        return result.size() > MAX_SET_SIZE ? ANY : result;
+    }
+
+    private static Set<String> shrinkSuffixes(Set<String> suffixes) {
+        var result = suffixes;
+        var length = minLength(suffixes);
+        while (result.size() > MAX_SET_SIZE && length > 0) {
+            length--;
+            final var truncated = new LinkedHashSet<String>();
+            for (final var suffix : result) {
+                truncated.add(suffix.substring(suffix.length() - Math.min(length, suffix.length())));
+            }
+            result = truncated;
+        }
+        return result.size() > MAX_SET_SIZE ? ANY : result;
+    }
+}
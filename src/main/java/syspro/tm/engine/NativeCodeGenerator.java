@@ -0,0 +1,150 @@
+package syspro.tm.engine;
+
+/**
+ * Translates a {@link Dfa} into direct-coded C++: every state is a label, transitions are {@code goto}s
+ * guarded by byte comparisons, so the compiler sees the whole automaton as straight-line code.
+ * Batch entry points run it over every record of a {@link syspro.tm.RecordBatch} or over every window of an input
+ * within a single native call.
+ */
+final class NativeCodeGenerator {
+    static final String MATCHES_FUNCTION = "matches";
+    static final String MATCHES_BATCH_FUNCTION = "matches_batch";
+    static final String MATCHES_WINDOWS_FUNCTION = "matches_windows";
+
+    private static final String PROLOGUE = """
+            #include <cstddef>
+            #include <cstdint>
+            
+            #ifndef __has_attribute
+              #define __has_attribute(x) 0
+            #endif
+            
+            #ifndef LIB_EXPORT
+              #if defined(_WIN32) || defined(_WIN64)
+                #define LIB_EXPORT    __declspec(dllexport)
+              #elif (defined(__GNUC__) && ((__GNUC__ > 4) || (__GNUC__ == 4) && (__GNUC_MINOR__ > 2))) || __has_attribute(visibility)
+                #ifdef ARM
+                  #define LIB_EXPORT  __attribute__((externally_visible,visibility("default")))
+                #else
+                  #define LIB_EXPORT  __attribute__((visibility("default")))
+                #endif
+              #else
+                #define LIB_EXPORT
+              #endif
+            #endif
+            
+            """;
+
+    private NativeCodeGenerator() {
+    }
+
+    static String generate(Dfa dfa) {
+        final var sb = new StringBuilder(PROLOGUE);
+        sb.append("extern \"C\" LIB_EXPORT int ").append(MATCHES_FUNCTION).append("(char* input, std::size_t length)\n");
+        sb.append("{\n");
+        sb.append("    const unsigned char* p = reinterpret_cast<const unsigned char*>(input);\n");
+        sb.append("    const unsigned char* const end = p + length;\n");
+        sb.append("    unsigned char c;\n");
+        final var start = dfa.startIndex();
+        if (start == Dfa.DEAD) {
+            sb.append("    return 0;\n");
+        } else {
+            sb.append("    goto s").append(start).append(";\n");
+        }
+
+        final var stateCount = dfa.stateCount();
+        for (int state = 1; state < stateCount; state++) {
+            sb.append("s").append(state).append(":\n");
+            sb.append("    if (p == end) return ").append(dfa.accepting[state] ? 1 : 0).append(";\n");
+            sb.append("    c = *p++;\n");
+            appendTransitions(sb, dfa.ranges(state));
+            sb.append("    return 0;\n");
+        }
+        sb.append("}\n");
+        appendBatchFunction(sb);
+        appendWindowsFunction(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Record {@code i} starts at {@code offsets[i] - offsets[0]} in {@code data}, since only the bytes
+     * of the records are passed. Bits of the matching records are set in the zeroed {@code results}.
+     */
+    private static void appendBatchFunction(StringBuilder sb) {
+        sb.append("""
+                
+                extern "C" LIB_EXPORT int %s(char* data, const std::int32_t* offsets, std::size_t count, std::uint64_t* results)
+                {
+                    int matched = 0;
+                    for (std::size_t i = 0; i < count; i++) {
+                        char* const record = data + (offsets[i] - offsets[0]);
+                        if (%s(record, static_cast<std::size_t>(offsets[i + 1] - offsets[i]))) {
+                            results[i / 64] |= std::uint64_t(1) << (i & 63);
+                            matched++;
+                        }
+                    }
+                    return matched;
+                }
+                """.formatted(MATCHES_BATCH_FUNCTION, MATCHES_FUNCTION));
+    }
+
+    /**
+     * Window {@code i} is {@code input[i * window, (i + 1) * window)}, cut off at the end of the input.
+     */
+    private static void appendWindowsFunction(StringBuilder sb) {
+        sb.append("""
+                
+                extern "C" LIB_EXPORT int %s(char* input, std::size_t length, std::size_t window, std::uint64_t* results)
+                {
+                    int matched = 0;
+                    std::size_t i = 0;
+                    for (std::size_t start = 0; start < length; start += window, i++) {
+                        const std::size_t size = length - start < window ? length - start : window;
+                        if (%s(input + start, size)) {
+                            results[i / 64] |= std::uint64_t(1) << (i & 63);
+                            matched++;
+                        }
+                    }
+                    return matched;
+                }
+                """.formatted(MATCHES_WINDOWS_FUNCTION, MATCHES_FUNCTION));
+    }
+
+    private static void appendTransitions(StringBuilder sb, int[] ranges) {
+        var singleBytes = true;
+        for (int i = 0; i < ranges.length; i += 3) {
+            if (ranges[i] != ranges[i + 1]) {
+                singleBytes = false;
+                break;
+            }
+        }
+
+        if (singleBytes && ranges.length != 0) {
+            sb.append("    switch (c) {\n");
+            for (int i = 0; i < ranges.length; i += 3) {
+                sb.append("        case ").append(ranges[i]).append(": goto s").append(ranges[i + 2]).append(";\n");
+            }
+            sb.append("        default: break;\n");
+            sb.append("    }\n");
+            return;
+        }
+
+        for (int i = 0; i < ranges.length; i += 3) {
+            final var first = ranges[i];
+            final var last = ranges[i + 1];
+            final var target = ranges[i + 2];
+            sb.append("    if (");
+            if (first == last) {
+                sb.append("c == ").append(first);
+            } else if (first == 0) {
+                sb.append("c <= ").append(last);
+            } else if (last == Dfa.ALPHABET_SIZE - 1) {
+                sb.append("c >= ").append(first);
+            } else {
+                // Single unsigned comparison instead of two
+                sb.append("static_cast<unsigned char>(c - ").append(first).append(") <= ").append(last - first);
+            }
+            sb.append(") goto s").append(target).append(";\n");
+        }
+    }
+}
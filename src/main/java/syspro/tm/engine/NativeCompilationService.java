@@ -0,0 +1,159 @@
+package syspro.tm.engine;
+
+import syspro.tm.jit.NativeLibrary;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiles generated native code on a fixed number of background threads, for a {@link NativeRegexEngine}
+ * that should not block on the compiler. Requests for a source that is being compiled share the compile,
+ * a finished library is then looked up in the bounded cache of the engine.
+ * <p>
+ * Until a library is ready, its pattern is matched by the table-driven DFA; {@link Metrics#fallbackHits} counts
+ * the calls that were served that way.
+ */
+public final class NativeCompilationService implements AutoCloseable {
+    public static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentHashMap<String, CompletableFuture<NativeLibrary>> compilations = new ConcurrentHashMap<>();
+    private final AtomicInteger activeCompiles = new AtomicInteger();
+    private final LongAdder completedCompiles = new LongAdder();
+    private final LongAdder failedCompiles = new LongAdder();
+    private final LongAdder totalCompileNanos = new LongAdder();
+    private final AtomicLong maxCompileNanos = new AtomicLong();
+    final LongAdder fallbackHits = new LongAdder();
+
+    public NativeCompilationService() {
+        this(DEFAULT_THREADS);
+    }
+
+    /**
+     * @param threads Maximum number of compilers that run at the same time, further compiles wait in a queue
+     */
+    public NativeCompilationService(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of compiler threads should be positive: " + threads);
+        }
+
+        final var threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final var thread = new Thread(runnable, "native-compiler-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return Library of the source code, completed exceptionally if it cannot be compiled or the service is closed
+     */
+    CompletableFuture<NativeLibrary> submit(String code) {
+        final var result = compilations.computeIfAbsent(code, _ -> {
+            try {
+                return CompletableFuture.supplyAsync(() -> load(code), executor);
+            } catch (RejectedExecutionException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+        // Failed compiles stay, so that a broken source is not compiled again
+        result.thenRun(() -> compilations.remove(code, result));
+        return result;
+    }
+
+    private NativeLibrary load(String code) {
+        activeCompiles.incrementAndGet();
+        final var start = System.nanoTime();
+        try {
+            final var library = NativeRegexEngine.library(code);
+            completedCompiles.increment();
+            return library;
+        } catch (RuntimeException e) {
+            failedCompiles.increment();
+            throw e;
+        } finally {
+            final var elapsed = System.nanoTime() - start;
+            totalCompileNanos.add(elapsed);
+            maxCompileNanos.accumulateAndGet(elapsed, Math::max);
+            activeCompiles.decrementAndGet();
+        }
+    }
+
+    public Metrics metrics() {
+        return new Metrics(
+                executor.getQueue().size(),
+                activeCompiles.get(),
+                completedCompiles.sum(),
+                failedCompiles.sum(),
+                totalCompileNanos.sum(),
+                maxCompileNanos.get(),
+                fallbackHits.sum()
+        );
+    }
+
+    /**
+     * Stops accepting compiles and waits for the queued ones to finish.
+     * Patterns submitted afterwards stay on the table-driven DFA.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    public static final class Metrics {
+        /**
+         * Compiles waiting for a thread.
+         */
+        public final int queueDepth;
+        /**
+         * Compiles running right now.
+         */
+        public final int activeCompiles;
+        public final long completedCompiles;
+        public final long failedCompiles;
+        /**
+         * Time spent in finished compiles, whether they succeeded or not, excluding the time in the queue.
+         */
+        public final long totalCompileNanos;
+        public final long maxCompileNanos;
+        /**
+         * Matching calls served by the table-driven DFA because the library was not ready yet or has failed to compile.
+         * A batch or a set of windows counts once per record or window.
+         */
+        public final long fallbackHits;
+
+        Metrics(int queueDepth, int activeCompiles, long completedCompiles, long failedCompiles,
+                long totalCompileNanos, long maxCompileNanos, long fallbackHits) {
+            this.queueDepth = queueDepth;
+            this.activeCompiles = activeCompiles;
+            this.completedCompiles = completedCompiles;
+            this.failedCompiles = failedCompiles;
+            this.totalCompileNanos = totalCompileNanos;
+            this.maxCompileNanos = maxCompileNanos;
+            this.fallbackHits = fallbackHits;
+        }
+
+        public long meanCompileNanos() {
+            final var finished = completedCompiles + failedCompiles;
+            return finished == 0 ? 0 : totalCompileNanos / finished;
+        }
+
+        @Override
+        public String toString() {
+            return "queued=" + queueDepth +
+                    ",active=" + activeCompiles +
+                    ",completed=" + completedCompiles +
+                    ",failed=" + failedCompiles +
+                    ",meanCompileMs=" + TimeUnit.NANOSECONDS.toMillis(meanCompileNanos()) +
+                    ",maxCompileMs=" + TimeUnit.NANOSECONDS.toMillis(maxCompileNanos) +
+                    ",fallbackHits=" + fallbackHits;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package syspro.tm.engine;
+
+import syspro.tm.CompiledRegexCache;
+import syspro.tm.RecordBatch;
+import syspro.tm.StreamMatcher;
+import syspro.tm.jit.LanguageVersion;
+import syspro.tm.jit.NativeCompilerRunner;
+import syspro.tm.jit.NativeLibraries;
+import syspro.tm.jit.NativeLibrary;
+import syspro.tm.regex.Regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Generates direct-coded C++ from the minimized DFA of every pattern, compiles it with {@link NativeCompilerRunner}
+ * and calls the result through {@link NativeLibrary}. Loaded libraries are kept per distinct generated source
+ * in a bounded cache, an evicted library is unloaded once no matcher uses it any more.
+ * <p>
+ * Patterns whose DFA exceeds the state limit use the {@link LazyDfaRegexEngine lazy DFA}. Without a native toolchain
+ * the engine falls back to the {@link FullDfaRegexEngine table-driven DFA}.
+ * <p>
+ * With a {@link NativeCompilationService}, the compiler runs in the background instead of the calling thread:
+ * patterns are matched by the table-driven DFA until their library is ready.
+ */
+public final class NativeRegexEngine extends AbstractRegexEngine<ByteMatcher> {
+    public static final int MAX_LOADED_LIBRARIES = 256;
+    private static final CompiledRegexCache<NativeLibrary> libraries = new CompiledRegexCache<>(MAX_LOADED_LIBRARIES,
+            code -> load(new String(code, StandardCharsets.UTF_8)));
+    private static volatile boolean toolchainUnavailable;
+
+    private final NativeCompilationService service;
+
+    public NativeRegexEngine() {
+        this(null);
+    }
+
+    /**
+     * @param service Compiles the libraries in the background, {@code null} to compile them on the calling thread
+     */
+    public NativeRegexEngine(NativeCompilationService service) {
+        this.service = service;
+    }
+
+    @Override
+    ByteMatcher compile(Regex regex) {
+        final Dfa dfa;
+        try {
+            dfa = Dfa.build(Program.compile(regex), FullDfaRegexEngine.DEFAULT_MAX_STATES).minimize();
+        } catch (DfaTooLargeException _) {
+            return new LazyDfa(Program.compile(regex, true), LazyDfaRegexEngine.DEFAULT_CACHE_BUDGET_BYTES);
+        }
+
+        if (toolchainUnavailable) {
+            return dfa;
+        }
+
+        final var code = NativeCodeGenerator.generate(dfa);
+        if (service != null) {
+            final var library = libraries.getIfPresent(code.getBytes(StandardCharsets.UTF_8));
+            return library != null ? new NativeMatcher(library) : new BackgroundMatcher(dfa, service, service.submit(code));
+        }
+        try {
+            return new NativeMatcher(library(code));
+        } catch (UnsupportedOperationException e) {
+            reportToolchainUnavailable(e);
+            return dfa;
+        }
+    }
+
+    private static void reportToolchainUnavailable(UnsupportedOperationException e) {
+        if (!toolchainUnavailable) {
+            toolchainUnavailable = true;
+            System.err.println(NativeRegexEngine.class.getSimpleName() + ": " + e.getMessage() + ", using table-driven DFA instead.");
+        }
+    }
+
+    /**
+     * @return Library of the source code, shared by all callers while it stays cached
+     */
+    static NativeLibrary library(String code) {
+        return libraries.get(code.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static NativeLibrary load(String code) {
+        final var libraryFile = NativeCompilerRunner.compile(code, LanguageVersion.Cpp17);
+        if (libraryFile == null) {
+            throw new RuntimeException("Failed to compile C++ source code:\n" + code);
+        }
+        final var library = NativeLibraries.load(libraryFile);
+        library.setMatchesFunction(NativeCodeGenerator.MATCHES_FUNCTION);
+        library.setMatchesBatchFunction(NativeCodeGenerator.MATCHES_BATCH_FUNCTION);
+        library.setMatchesWindowsFunction(NativeCodeGenerator.MATCHES_WINDOWS_FUNCTION);
+        return library;
+    }
+
+    @Override
+    boolean matches(ByteMatcher compiled, byte[] input) {
+        return compiled.matches(input);
+    }
+
+    @Override
+    boolean matches(ByteMatcher compiled, byte[] input, int from, int to) {
+        return compiled.matches(input, from, to);
+    }
+
+    @Override
+    int matchBatch(ByteMatcher compiled, RecordBatch batch, long[] results) {
+        return compiled.matchBatch(batch, results);
+    }
+
+    @Override
+    int matchWindows(ByteMatcher compiled, byte[] input, int windowSize, long[] results) {
+        return compiled.matchWindows(input, windowSize, results);
+    }
+
+    @Override
+    StreamMatcher streamMatcher(ByteMatcher compiled) {
+        return compiled.streamMatcher();
+    }
+
+    /**
+     * Calls the generated code of a single library, a whole {@link RecordBatch} or all windows of an input
+     * are matched by one downcall.
+     */
+    private static final class NativeMatcher implements ByteMatcher {
+        private final NativeLibrary library;
+
+        NativeMatcher(NativeLibrary library) {
+            this.library = library;
+        }
+
+        @Override
+        public boolean matches(byte[] input) {
+            return library.callMatches(input);
+        }
+
+        @Override
+        public boolean matches(byte[] input, int from, int to) {
+            return library.callMatches(input, from, to);
+        }
+
+        @Override
+        public int matchBatch(RecordBatch batch, long[] results) {
+            return library.callMatchesBatch(batch.data, batch.offsets, results);
+        }
+
+        @Override
+        public int matchWindows(byte[] input, int windowSize, long[] results) {
+            return library.callMatchesWindows(input, windowSize, results);
+        }
+    }
+
+    /**
+     * Matches with the table-driven DFA until the library of the pattern is compiled in the background,
+     * then with the library. The switch is a single volatile write, so every call uses one of them entirely.
+     */
+    private static final class BackgroundMatcher implements ByteMatcher {
+        private final Dfa fallback;
+        private final NativeCompilationService service;
+        private volatile ByteMatcher current;
+
+        BackgroundMatcher(Dfa fallback, NativeCompilationService service, CompletableFuture<NativeLibrary> library) {
+            this.fallback = fallback;
+            this.service = service;
+            current = fallback;
+            library.whenComplete((loaded, error) -> {
+                if (loaded != null) {
+                    current = new NativeMatcher(loaded);
+                } else if (error.getCause() instanceof UnsupportedOperationException e) {
+                    reportToolchainUnavailable(e);
+                }
+            });
+        }
+
+        private ByteMatcher current() {
+            final var matcher = current;
+            if (matcher == fallback) {
+                service.fallbackHits.increment();
+            }
+            return matcher;
+        }
+
+        @Override
+        public boolean matches(byte[] input) {
+            return current().matches(input);
+        }
+
+        @Override
+        public boolean matches(byte[] input, int from, int to) {
+            return current().matches(input, from, to);
+        }
+
+        /**
+         * The fallback matches a batch record by record through {@link #matches(byte[], int, int)},
+         * which counts every record as a fallback hit, so the batch itself is not counted.
+         */
+        @Override
+        public int matchBatch(RecordBatch batch, long[] results) {
+            final var matcher = current;
+            return matcher == fallback ? -1 : matcher.matchBatch(batch, results);
+        }
+
+        @Override
+        public int matchWindows(byte[] input, int windowSize, long[] results) {
+            final var matcher = current;
+            return matcher == fallback ? -1 : matcher.matchWindows(input, windowSize, results);
+        }
+
+        @Override
+        public StreamMatcher streamMatcher() {
+            // The generated code has no streaming mode
+            return fallback.streamMatcher();
+        }
+    }
+}
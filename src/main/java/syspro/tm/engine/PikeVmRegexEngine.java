@@ -0,0 +1,254 @@
+package syspro.tm.engine;
+
+import syspro.tm.RegexSet;
+import syspro.tm.StreamMatcher;
+import syspro.tm.regex.Regex;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Pike VM: simulates all NFA threads of the compiled {@link Program} in lock-step,
+ * so matching time is linear in the input length regardless of the pattern.
+ * Large repetitions of a single character are simulated with {@link Program#COUNT counters} instead of unrolling.
+ * Searches start a new thread at every input position and stop at the first one that reaches {@link Program#MATCH}.
+ * Regex sets run as one program, the {@link Program#MATCH} instructions left after the input tell which regexes match.
+ */
+public final class PikeVmRegexEngine extends AbstractRegexEngine<Program> {
+    @Override
+    Program compile(Regex regex) {
+        return Program.compile(regex, true);
+    }
+
+    @Override
+    boolean matches(Program program, byte[] input) {
+        return simulate(program, input, 0, input.length);
+    }
+
+    @Override
+    Program compileSearch(Regex regex) {
+        return Program.compile(regex, true);
+    }
+
+    @Override
+    boolean find(Program program, byte[] input) {
+        return search(program, input, 0, input.length);
+    }
+
+    @Override
+    boolean matches(Program program, byte[] input, int from, int to) {
+        return simulate(program, input, from, to);
+    }
+
+    @Override
+    boolean find(Program program, byte[] input, int from, int to) {
+        return search(program, input, from, to);
+    }
+
+    @Override
+    StreamMatcher streamMatcher(Program program) {
+        return new Streaming(program, false);
+    }
+
+    @Override
+    StreamMatcher searchStreamMatcher(Program program) {
+        return new Streaming(program, true);
+    }
+
+    @Override
+    RegexSet compileSet(List<Regex> regexes) {
+        final var program = Program.compileSet(regexes);
+        return new CombinedRegexSet(program, input -> simulateSet(program, input));
+    }
+
+    static boolean simulate(Program program, byte[] input, int from, int to) {
+        final var current = new Threads(program);
+        final var stack = new int[2 * program.size() + 1];
+        addThread(program, current, program.start, stack);
+        return run(program, current, new Threads(program), input, from, to, stack);
+    }
+
+    static BitSet simulateSet(Program program, byte[] input) {
+        final var current = new Threads(program);
+        final var stack = new int[2 * program.size() + 1];
+        addThread(program, current, program.start, stack);
+        return program.matchingPatterns(advance(program, current, new Threads(program), input, 0, input.length, stack));
+    }
+
+    static boolean search(Program program, byte[] input, int from, int to) {
+        var current = new Threads(program);
+        var next = new Threads(program);
+        final var stack = new int[2 * program.size() + 1];
+        addThread(program, current, program.start, stack);
+        for (int i = from; i < to; i++) {
+            if (current.contains(program.match)) {
+                return true;
+            }
+            step(program, current, next, Byte.toUnsignedInt(input[i]), stack);
+            final var swap = current;
+            current = next;
+            next = swap;
+            addThread(program, current, program.start, stack);
+        }
+        return current.contains(program.match);
+    }
+
+    /**
+     * Continues the simulation from the threads in {@code current} at {@code input[from]} up to {@code input[to]}.
+     */
+    static boolean run(Program program, Threads current, Threads next, byte[] input, int from, int to, int[] stack) {
+        return advance(program, current, next, input, from, to, stack).contains(program.match);
+    }
+
+    /**
+     * Continues the simulation from the threads in {@code current} at {@code input[from]} up to {@code input[to]}.
+     *
+     * @return Threads after the last input byte, either {@code current} or {@code next}
+     */
+    static Threads advance(Program program, Threads current, Threads next, byte[] input, int from, int to, int[] stack) {
+        for (int i = from; i < to && !current.isEmpty(); i++) {
+            step(program, current, next, Byte.toUnsignedInt(input[i]), stack);
+            final var swap = current;
+            current = next;
+            next = swap;
+        }
+        return current;
+    }
+
+    static void step(Program program, Threads current, Threads next, int b, int[] stack) {
+        next.clear();
+        final var opcodes = program.opcodes;
+        final var sets = program.sets;
+        final var size = current.size();
+        for (int i = 0; i < size; i++) {
+            final var pc = current.get(i);
+            final var opcode = opcodes[pc];
+            if (opcode == Program.BYTE_SET && sets[pc].contains(b)) {
+                addThread(program, next, program.next[pc], stack);
+            } else if (opcode == Program.COUNT && sets[pc].contains(b)) {
+                // A thread whose counter values have all exceeded the maximum is dead
+                final var values = next.valuesToFill(pc);
+                final var canExit = program.increment(pc, current.values(pc), values);
+                if (!Program.isEmpty(values)) {
+                    next.addFilled(pc);
+                    if (canExit) {
+                        addThread(program, next, program.next[pc], stack);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds {@code pc} and everything reachable from it through {@link Program#SPLIT} and {@link Program#JUMP}.
+     * Reaching a {@link Program#COUNT} starts a new repetition with the counter value 0.
+     */
+    static void addThread(Program program, Threads list, int pc, int[] stack) {
+        final var opcodes = program.opcodes;
+        final var next = program.next;
+        final var alternative = program.alternative;
+        int top = 0;
+        stack[top++] = pc;
+        while (top != 0) {
+            pc = stack[--top];
+            if (opcodes[pc] == Program.COUNT) {
+                list.add(pc);
+                final var values = list.values(pc);
+                if ((values[0] & 1) == 0) {
+                    values[0] |= 1;
+                    if (program.counterMin[pc] == 0) {
+                        stack[top++] = next[pc];
+                    }
+                }
+                continue;
+            }
+            if (!list.add(pc)) {
+                continue;
+            }
+            switch (opcodes[pc]) {
+                case Program.JUMP -> stack[top++] = next[pc];
+                case Program.SPLIT -> {
+                    stack[top++] = alternative[pc];
+                    stack[top++] = next[pc];
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    static final class Streaming implements StreamMatcher {
+        private final Program program;
+        /**
+         * Whether a new thread starts at every position and reaching {@link Program#MATCH} decides the result.
+         */
+        private final boolean search;
+        private final int[] stack;
+        private Threads current;
+        private Threads next;
+        private Status status;
+
+        Streaming(Program program, boolean search) {
+            this.program = program;
+            this.search = search;
+            this.stack = new int[2 * program.size() + 1];
+            this.current = new Threads(program);
+            this.next = new Threads(program);
+            start();
+        }
+
+        private void start() {
+            current.clear();
+            addThread(program, current, program.start, stack);
+            status = status();
+        }
+
+        /**
+         * Continues the simulation from the {@link Program#canonicalThreads canonical} thread list.
+         */
+        void load(int[] canonical) {
+            program.loadThreads(canonical, current);
+            status = status();
+        }
+
+        @Override
+        public Status feed(ByteBuffer chunk) {
+            final var limit = chunk.limit();
+            if (status == Status.UNDECIDED) {
+                for (int i = chunk.position(); i < limit && !current.isEmpty(); i++) {
+                    step(program, current, next, Byte.toUnsignedInt(chunk.get(i)), stack);
+                    final var swap = current;
+                    current = next;
+                    next = swap;
+                    if (search) {
+                        if (current.contains(program.match)) {
+                            break;
+                        }
+                        addThread(program, current, program.start, stack);
+                    }
+                }
+                status = status();
+            }
+            chunk.position(limit);
+            return status;
+        }
+
+        private Status status() {
+            if (current.isEmpty()) {
+                return Status.NO_MATCH;
+            }
+            if (search ? current.contains(program.match) : program.isUniversal(current)) {
+                return Status.MATCH;
+            }
+            return Status.UNDECIDED;
+        }
+
+        @Override
+        public boolean finish() {
+            final var result = current.contains(program.match);
+            start();
+            return result;
+        }
+    }
+}
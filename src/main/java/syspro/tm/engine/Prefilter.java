@@ -0,0 +1,154 @@
+package syspro.tm.engine;
+
+import syspro.tm.regex.Regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Cheap necessary condition for a match, derived from {@link LiteralAnalysis}.
+ * Rejects inputs that do not start, end with or contain the literals every match requires.
+ */
+public final class Prefilter {
+    /**
+     * Approximate byte frequency ranks in English text and logs, rarer bytes have smaller ranks.
+     */
+    private static final byte[] FREQUENCY_RANK = frequencyRanks();
+
+    private final byte[][] prefixes;
+    private final byte[][] suffixes;
+    private final Needle[] inner;
+
+    private Prefilter(byte[][] prefixes, byte[][] suffixes, Needle[] inner) {
+        this.prefixes = prefixes;
+        this.suffixes = suffixes;
+        this.inner = inner;
+    }
+
+    /**
+     * @return Prefilter for the regex, or {@code null} if every input may match
+     */
+    public static Prefilter of(Regex regex) {
+        final var literals = LiteralAnalysis.analyze(regex);
+        final var prefixes = LiteralAnalysis.Literals.isTrivial(literals.prefixes) ? null : toBytes(literals.prefixes);
+        final var suffixes = LiteralAnalysis.Literals.isTrivial(literals.suffixes) ? null : toBytes(literals.suffixes);
+        Needle[] inner = null;
+        // Prefix or suffix checks already imply the same inner literals
+        if (!LiteralAnalysis.Literals.isTrivial(literals.inner)
+                && !literals.inner.equals(literals.prefixes) && !literals.inner.equals(literals.suffixes)) {
+            final var needles = toBytes(literals.inner);
+            inner = new Needle[needles.length];
+            for (int i = 0; i < needles.length; i++) {
+                inner[i] = new Needle(needles[i]);
+            }
+        }
+        if (prefixes == null && suffixes == null && inner == null) {
+            return null;
+        }
+        return new Prefilter(prefixes, suffixes, inner);
+    }
+
+    /**
+     * @return {@code false} if the input definitely does not match
+     */
+    public boolean mayMatch(byte[] input) {
+        return mayMatch(input, 0, input.length);
+    }
+
+    /**
+     * @return {@code false} if {@code input[from, to)} definitely does not match
+     */
+    public boolean mayMatch(byte[] input, int from, int to) {
+        if (prefixes != null && !anyAt(prefixes, input, from, to, true)) {
+            return false;
+        }
+        if (suffixes != null && !anyAt(suffixes, input, from, to, false)) {
+            return false;
+        }
+        if (inner != null) {
+            for (final var needle : inner) {
+                if (needle.indexIn(input, from, to) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean anyAt(byte[][] literals, byte[] input, int from, int to, boolean start) {
+        for (final var literal : literals) {
+            if (literal.length > to - from) {
+                continue;
+            }
+            final var offset = start ? from : to - literal.length;
+            if (Arrays.equals(input, offset, offset + literal.length, literal, 0, literal.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[][] toBytes(Set<String> literals) {
+        final var result = new byte[literals.size()][];
+        int i = 0;
+        for (final var literal : literals) {
+            result[i++] = literal.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return result;
+    }
+
+    /**
+     * Substring search that scans for the rarest byte of the literal and verifies candidates around it.
+     */
+    static final class Needle {
+        private final byte[] literal;
+        private final int rareOffset;
+        private final byte rare;
+
+        Needle(byte[] literal) {
+            this.literal = literal;
+            int offset = 0;
+            for (int i = 1; i < literal.length; i++) {
+                if (FREQUENCY_RANK[literal[i] & 0xFF] < FREQUENCY_RANK[literal[offset] & 0xFF]) {
+                    offset = i;
+                }
+            }
+            this.rareOffset = offset;
+            this.rare = literal[offset];
+        }
+
+        /**
+         * @return Index of the first occurrence of the literal in {@code input[from, to)}, or -1 if there is none
+         */
+        int indexIn(byte[] input, int from, int to) {
+            final var length = literal.length;
+            final var last = to - length + rareOffset;
+            for (int i = from + rareOffset; i <= last; i++) {
+                if (input[i] != rare) {
+                    continue;
+                }
+                final var candidate = i - rareOffset;
+                if (input[candidate] == literal[0]
+                        && Arrays.equals(input, candidate, candidate + length, literal, 0, length)) {
+                    return candidate;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static byte[] frequencyRanks() {
+        final var ranks = new byte[256];
+        // Unlisted bytes (control characters, non-ASCII) get the lowest rank
+        final var common = "etaoinshrdlcumwfgypbvkjxqzETAOINSHRDLCUMWFGYPBVKJXQZ0123456789.,-'\"/:;()=_?!";
+        Arrays.fill(ranks, (byte) 0);
+        ranks[' '] = 127;
+        ranks['\n'] = 100;
+        for (int i = 0; i < common.length(); i++) {
+            ranks[common.charAt(i)] = (byte) (126 - i);
+        }
+        return ranks;
+    }
+}
@@ -0,0 +1,550 @@
+package syspro.tm.engine;
+
+import syspro.tm.regex.ByteClasses;
+import syspro.tm.regex.ByteSet;
+import syspro.tm.regex.Regex;
+import syspro.tm.regex.RegexVisitor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Thompson-style NFA instruction program compiled from the {@link Regex} AST.
+ * Instructions are stored in parallel arrays indexed by program counter.
+ * A program compiled from a set of regexes has one {@link #MATCH} instruction per regex.
+ */
+final class Program {
+    /**
+     * Consume one input byte if it belongs to {@link #sets}{@code [pc]}, continue at {@link #next}{@code [pc]}.
+     */
+    static final int BYTE_SET = 0;
+    /**
+     * Continue at both {@link #next}{@code [pc]} and {@link #alternative}{@code [pc]}.
+     */
+    static final int SPLIT = 1;
+    /**
+     * Continue at {@link #next}{@code [pc]}.
+     */
+    static final int JUMP = 2;
+    /**
+     * Accept the input if it has been fully consumed.
+     */
+    static final int MATCH = 3;
+    /**
+     * Bounded repetition of {@link #sets}{@code [pc]}: consume one input byte of the set, incrementing the counter,
+     * or continue at {@link #next}{@code [pc]} once the counter reaches {@link #counterMin}{@code [pc]}.
+     * Threads keep the set of counter values instead of one program counter per unrolled copy.
+     */
+    static final int COUNT = 4;
+    /**
+     * {@link #counterMax} of repetitions without an upper bound.
+     */
+    static final int UNBOUNDED = -1;
+    /**
+     * Bounded repetitions of a single character with at least that many copies are compiled to {@link #COUNT}.
+     */
+    private static final int MIN_COUNTED_REPETITIONS = 4;
+
+    final int[] opcodes;
+    final int[] next;
+    final int[] alternative;
+    final ByteSet[] sets;
+    final int[] counterMin;
+    final int[] counterMax;
+    final int start;
+    /**
+     * {@link #MATCH} instruction of the first regex.
+     */
+    final int match;
+    /**
+     * {@link #MATCH} instruction of every regex in ascending order, indexed by the position of the regex in its set.
+     */
+    final int[] matches;
+    /**
+     * Byte classes that no instruction distinguishes between.
+     */
+    final ByteClasses classes;
+    /**
+     * Instructions that consume any byte and lead back to themselves and to the {@link #MATCH} of their regex
+     * without consuming input, like the loop of a trailing {@code .*}.
+     * An accepting thread list with such a thread accepts every continuation.
+     */
+    private final boolean[] universal;
+
+    private Program(int[] opcodes, int[] next, int[] alternative, ByteSet[] sets, int[] counterMin, int[] counterMax,
+                    int start, int[] matches, ByteClasses classes) {
+        this.opcodes = opcodes;
+        this.next = next;
+        this.alternative = alternative;
+        this.sets = sets;
+        this.counterMin = counterMin;
+        this.counterMax = counterMax;
+        this.start = start;
+        this.match = matches[0];
+        this.matches = matches;
+        this.classes = classes;
+        this.universal = findUniversal();
+    }
+
+    private boolean[] findUniversal() {
+        final var result = new boolean[size()];
+        final var closure = new Threads(this);
+        final var stack = new int[2 * size() + 1];
+        for (int pc = 0; pc < size(); pc++) {
+            if (opcodes[pc] != BYTE_SET || !sets[pc].equals(ByteSet.ALL)) {
+                continue;
+            }
+            closure.clear();
+            PikeVmRegexEngine.addThread(this, closure, next[pc], stack);
+            result[pc] = closure.contains(pc) && closure.contains(matches[patternOf(pc)]);
+        }
+        return result;
+    }
+
+    /**
+     * Compiles repetitions by unrolling them, for engines that do not support {@link #COUNT}.
+     */
+    static Program compile(Regex regex) {
+        return compile(regex, false);
+    }
+
+    /**
+     * @param counting Whether large repetitions of a single character should use {@link #COUNT}
+     */
+    static Program compile(Regex regex, boolean counting) {
+        final var compiler = new Compiler(counting);
+        regex.accept(compiler);
+        return compiler.finish(ByteClasses.of(regex));
+    }
+
+    /**
+     * Compiles every regex to its own {@link #MATCH} instruction, all of them start at {@link #start}.
+     * Large repetitions of a single character use {@link #COUNT}.
+     */
+    static Program compileSet(List<Regex> regexes) {
+        if (regexes.isEmpty()) {
+            throw new IllegalArgumentException("Regex set should be non-empty");
+        }
+
+        final var compiler = new Compiler(true);
+        final var count = regexes.size();
+        final var matches = new int[count];
+        for (int i = 0; i < count - 1; i++) {
+            final var split = compiler.emit(SPLIT, compiler.size + 1, -1, null);
+            regexes.get(i).accept(compiler);
+            matches[i] = compiler.emit(MATCH, -1, -1, null);
+            compiler.alternative[split] = compiler.size;
+        }
+        regexes.getLast().accept(compiler);
+        matches[count - 1] = compiler.emit(MATCH, -1, -1, null);
+        return compiler.finish(matches, ByteClasses.of(new Regex.Alternation(regexes.toArray(Regex[]::new))));
+    }
+
+    int size() {
+        return opcodes.length;
+    }
+
+    /**
+     * @return Number of regexes compiled into the program
+     */
+    int patternCount() {
+        return matches.length;
+    }
+
+    /**
+     * @return Largest counter value that is tracked, values of unbounded counters saturate at their minimum
+     */
+    int counterLimit(int pc) {
+        return counterMax[pc] == UNBOUNDED ? counterMin[pc] : counterMax[pc];
+    }
+
+    /**
+     * @return Number of words in the bit set of counter values of the {@link #COUNT} instruction
+     */
+    int counterWords(int pc) {
+        return (counterLimit(pc) >>> 6) + 1;
+    }
+
+    /**
+     * Adds every counter value of {@code from} plus one to {@code to}.
+     *
+     * @return {@code true} if {@code to} has a value that allows leaving the repetition
+     */
+    boolean increment(int pc, long[] from, long[] to) {
+        final var limit = counterLimit(pc);
+        final var words = from.length;
+        long carry = 0;
+        for (int i = 0; i < words; i++) {
+            final var word = from[i];
+            var shifted = (word << 1) | carry;
+            carry = word >>> 63;
+            if (i == words - 1) {
+                // Drop values above the limit
+                shifted &= -1L >>> (63 - (limit & 63));
+            }
+            to[i] |= shifted;
+        }
+        if (counterMax[pc] == UNBOUNDED && (from[limit >>> 6] & (1L << limit)) != 0) {
+            to[limit >>> 6] |= 1L << limit;
+        }
+        return canExit(pc, to);
+    }
+
+    /**
+     * @return {@code true} if some counter value allows leaving the repetition
+     */
+    boolean canExit(int pc, long[] values) {
+        final var min = counterMin[pc];
+        final var first = min >>> 6;
+        if ((values[first] & (-1L << min)) != 0) {
+            return true;
+        }
+        for (int i = first + 1; i < values.length; i++) {
+            if (values[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if no counter value is left, every one has exceeded the maximum and the thread is dead
+     */
+    static boolean isEmpty(long[] values) {
+        for (final var word : values) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps only threads that can consume input or accept it, in a canonical order.
+     * Every {@link #COUNT} thread is followed by the words of its counter values, split into pairs of ints.
+     * Two thread lists with equal canonical forms accept the same language.
+     */
+    int[] canonicalThreads(Threads threads) {
+        final var size = threads.size();
+        final var pcs = new int[size];
+        int n = 0;
+        int counterInts = 0;
+        for (int i = 0; i < size; i++) {
+            final var pc = threads.get(i);
+            final var opcode = opcodes[pc];
+            if (opcode == COUNT && isEmpty(threads.values(pc))) {
+                continue;
+            }
+            if (opcode == BYTE_SET || opcode == MATCH || opcode == COUNT) {
+                pcs[n++] = pc;
+                if (opcode == COUNT) {
+                    counterInts += 2 * counterWords(pc);
+                }
+            }
+        }
+        Arrays.sort(pcs, 0, n);
+        if (counterInts == 0) {
+            return Arrays.copyOf(pcs, n);
+        }
+
+        final var result = new int[n + counterInts];
+        int position = 0;
+        for (int i = 0; i < n; i++) {
+            final var pc = pcs[i];
+            result[position++] = pc;
+            if (opcodes[pc] == COUNT) {
+                for (final var word : threads.values(pc)) {
+                    result[position++] = (int) (word >>> 32);
+                    result[position++] = (int) word;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Restores the thread list from its {@link #canonicalThreads canonical form}.
+     */
+    void loadThreads(int[] canonical, Threads threads) {
+        threads.clear();
+        int position = 0;
+        while (position < canonical.length) {
+            final var pc = canonical[position++];
+            threads.add(pc);
+            if (opcodes[pc] == COUNT) {
+                final var values = threads.values(pc);
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = ((long) canonical[position] << 32) | Integer.toUnsignedLong(canonical[position + 1]);
+                    position += 2;
+                }
+            }
+        }
+    }
+
+    boolean isAccepting(int[] canonical) {
+        int position = 0;
+        while (position < canonical.length) {
+            final var pc = canonical[position++];
+            if (pc == match) {
+                return true;
+            }
+            if (opcodes[pc] == COUNT) {
+                position += 2 * counterWords(pc);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Index of the regex that the instruction has been compiled from
+     */
+    int patternOf(int pc) {
+        final var index = Arrays.binarySearch(matches, pc);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * @return Indices of the regexes whose {@link #MATCH} instruction is in the thread list
+     */
+    BitSet matchingPatterns(Threads threads) {
+        final var result = new BitSet(matches.length);
+        final var size = threads.size();
+        for (int i = 0; i < size; i++) {
+            final var pc = threads.get(i);
+            if (opcodes[pc] == MATCH) {
+                result.set(patternOf(pc));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Indices of the regexes whose {@link #MATCH} instruction is in the {@link #canonicalThreads canonical} thread list
+     */
+    BitSet matchingPatterns(int[] canonical) {
+        final var result = new BitSet(matches.length);
+        int position = 0;
+        while (position < canonical.length) {
+            final var pc = canonical[position++];
+            if (opcodes[pc] == MATCH) {
+                result.set(patternOf(pc));
+            } else if (opcodes[pc] == COUNT) {
+                position += 2 * counterWords(pc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Indices of the regexes that the {@link #canonicalThreads canonical} thread list accepts
+     * with every continuation of the consumed input
+     */
+    BitSet universalPatterns(int[] canonical) {
+        final var result = new BitSet(matches.length);
+        final var accepted = matchingPatterns(canonical);
+        int position = 0;
+        while (position < canonical.length) {
+            final var pc = canonical[position++];
+            if (universal[pc] && accepted.get(patternOf(pc))) {
+                result.set(patternOf(pc));
+            } else if (opcodes[pc] == COUNT) {
+                position += 2 * counterWords(pc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the {@link #MATCH} and {@link #universal} threads of the given regexes. Their other threads are kept,
+     * so that the thread list is the same as if the regexes had not matched yet.
+     *
+     * @return {@link #canonicalThreads Canonical} thread list without those threads
+     */
+    int[] withoutMatches(int[] canonical, BitSet patterns) {
+        final var result = new int[canonical.length];
+        int length = 0;
+        int position = 0;
+        while (position < canonical.length) {
+            final var pc = canonical[position];
+            final var end = position + 1 + (opcodes[pc] == COUNT ? 2 * counterWords(pc) : 0);
+            if (!(opcodes[pc] == MATCH || universal[pc]) || !patterns.get(patternOf(pc))) {
+                System.arraycopy(canonical, position, result, length, end - position);
+                length += end - position;
+            }
+            position = end;
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    /**
+     * @return {@code true} if the thread list accepts the consumed input and every continuation of it
+     */
+    boolean isUniversal(Threads threads) {
+        if (!threads.contains(match)) {
+            return false;
+        }
+        final var size = threads.size();
+        for (int i = 0; i < size; i++) {
+            if (universal[threads.get(i)]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if the {@link #canonicalThreads canonical} thread list accepts the consumed input
+     * and every continuation of it
+     */
+    boolean isUniversal(int[] canonical) {
+        return isAccepting(canonical) && hasUniversalThread(canonical);
+    }
+
+    /**
+     * @return Some instruction that makes an accepting thread list universal, or -1 if there is none
+     */
+    int universalInstruction() {
+        for (int pc = 0; pc < size(); pc++) {
+            if (universal[pc]) {
+                return pc;
+            }
+        }
+        return -1;
+    }
+
+    private boolean hasUniversalThread(int[] canonical) {
+        int position = 0;
+        while (position < canonical.length) {
+            final var pc = canonical[position++];
+            if (universal[pc]) {
+                return true;
+            }
+            if (opcodes[pc] == COUNT) {
+                position += 2 * counterWords(pc);
+            }
+        }
+        return false;
+    }
+
+    private static final class Compiler implements RegexVisitor<Void> {
+        private final boolean counting;
+        private int[] opcodes = new int[16];
+        private int[] next = new int[16];
+        private int[] alternative = new int[16];
+        private ByteSet[] sets = new ByteSet[16];
+        private int[] counterMin = new int[16];
+        private int[] counterMax = new int[16];
+        private int size;
+
+        Compiler(boolean counting) {
+            this.counting = counting;
+        }
+
+        private int emit(int opcode, int next, int alternative, ByteSet set) {
+            if (size == opcodes.length) {
+                final var capacity = size * 2;
+                opcodes = Arrays.copyOf(opcodes, capacity);
+                this.next = Arrays.copyOf(this.next, capacity);
+                this.alternative = Arrays.copyOf(this.alternative, capacity);
+                sets = Arrays.copyOf(sets, capacity);
+                counterMin = Arrays.copyOf(counterMin, capacity);
+                counterMax = Arrays.copyOf(counterMax, capacity);
+            }
+            final var pc = size++;
+            opcodes[pc] = opcode;
+            this.next[pc] = next;
+            this.alternative[pc] = alternative;
+            sets[pc] = set;
+            return pc;
+        }
+
+        private Program finish(ByteClasses classes) {
+            return finish(new int[]{emit(MATCH, -1, -1, null)}, classes);
+        }
+
+        private Program finish(int[] matches, ByteClasses classes) {
+            return new Program(
+                    Arrays.copyOf(opcodes, size),
+                    Arrays.copyOf(next, size),
+                    Arrays.copyOf(alternative, size),
+                    Arrays.copyOf(sets, size),
+                    Arrays.copyOf(counterMin, size),
+                    Arrays.copyOf(counterMax, size),
+                    0,
+                    matches,
+                    classes
+            );
+        }
+
+        @Override
+        public Void visitSingleCharacter(Regex.SingleCharacter node) {
+            final var pc = size;
+            emit(BYTE_SET, pc + 1, -1, node.character.byteSet());
+            return null;
+        }
+
+        @Override
+        public Void visitConcatenation(Regex.Concatenation node) {
+            for (final var part : node) {
+                part.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitAlternation(Regex.Alternation node) {
+            final var count = node.size();
+            final var jumps = new int[count - 1];
+            for (int i = 0; i < count - 1; i++) {
+                final var split = emit(SPLIT, size + 1, -1, null);
+                node.get(i).accept(this);
+                jumps[i] = emit(JUMP, -1, -1, null);
+                alternative[split] = size;
+            }
+            node.get(count - 1).accept(this);
+            for (final var jump : jumps) {
+                next[jump] = size;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitRepetition(Regex.Repetition node) {
+            final int min = node.min == null ? 0 : node.min;
+            final int copies = node.max == null ? min : node.max;
+            if (counting && copies >= MIN_COUNTED_REPETITIONS && node.argument instanceof Regex.SingleCharacter single) {
+                final var pc = size;
+                emit(COUNT, pc + 1, -1, single.character.byteSet());
+                counterMin[pc] = min;
+                counterMax[pc] = node.max == null ? UNBOUNDED : node.max;
+                return null;
+            }
+
+            for (int i = 0; i < min; i++) {
+                node.argument.accept(this);
+            }
+
+            if (node.max == null) {
+                // L1: split L2, L3; L2: argument; jump L1; L3:
+                final var split = emit(SPLIT, size + 1, -1, null);
+                node.argument.accept(this);
+                emit(JUMP, split, -1, null);
+                alternative[split] = size;
+                return null;
+            }
+
+            // Optional copies all skip to the same end: (x(x(x)?)?)?
+            final var optionalCount = node.max - min;
+            final var splits = new int[optionalCount];
+            for (int i = 0; i < optionalCount; i++) {
+                splits[i] = emit(SPLIT, size + 1, -1, null);
+                node.argument.accept(this);
+            }
+            for (final var split : splits) {
+                alternative[split] = size;
+            }
+            return null;
+        }
+    }
+}
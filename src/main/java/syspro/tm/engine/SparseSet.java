@@ -0,0 +1,49 @@
+package syspro.tm.engine;
+
+/**
+ * Set of integers in {@code [0, capacity)} with O(1) insertion, membership test and clearing.
+ * Iteration order is insertion order.
+ */
+final class SparseSet {
+    private final int[] dense;
+    private final int[] sparse;
+    private int size;
+
+    SparseSet(int capacity) {
+        dense = new int[capacity];
+        sparse = new int[capacity];
+    }
+
+    boolean contains(int value) {
+        final var index = sparse[value];
+        return index < size && dense[index] == value;
+    }
+
+    /**
+     * @return {@code true} if the value was not present before
+     */
+    boolean add(int value) {
+        if (contains(value)) {
+            return false;
+        }
+        dense[size] = value;
+        sparse[value] = size++;
+        return true;
+    }
+
+    int get(int index) {
+        return dense[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
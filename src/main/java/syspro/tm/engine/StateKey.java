@@ -0,0 +1,26 @@
+package syspro.tm.engine;
+
+import java.util.Arrays;
+
+/**
+ * Hash key of a DFA state: the {@link Program#canonicalThreads canonical} list of NFA threads it represents.
+ */
+final class StateKey {
+    private final int[] pcs;
+    private final int hash;
+
+    StateKey(int[] pcs) {
+        this.pcs = pcs;
+        this.hash = Arrays.hashCode(pcs);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof StateKey that && hash == that.hash && Arrays.equals(pcs, that.pcs);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
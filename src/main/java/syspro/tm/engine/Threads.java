@@ -0,0 +1,86 @@
+package syspro.tm.engine;
+
+import java.util.Arrays;
+
+/**
+ * List of NFA threads of a {@link Program}: a set of program counters,
+ * plus the set of counter values of every {@link Program#COUNT} thread.
+ */
+final class Threads {
+    private final SparseSet pcs;
+    /**
+     * Bit sets of counter values indexed by program counter, {@code null} for instructions other than {@link Program#COUNT}.
+     */
+    private final long[][] values;
+
+    Threads(Program program) {
+        final var size = program.size();
+        pcs = new SparseSet(size);
+        values = new long[size][];
+        for (int pc = 0; pc < size; pc++) {
+            if (program.opcodes[pc] == Program.COUNT) {
+                values[pc] = new long[program.counterWords(pc)];
+            }
+        }
+    }
+
+    boolean contains(int pc) {
+        return pcs.contains(pc);
+    }
+
+    /**
+     * @return {@code true} if the thread was not present before, its counter values are empty then
+     */
+    boolean add(int pc) {
+        if (!pcs.add(pc)) {
+            return false;
+        }
+        final var counter = values[pc];
+        if (counter != null) {
+            Arrays.fill(counter, 0);
+        }
+        return true;
+    }
+
+    /**
+     * @return Mutable counter values of the {@link Program#COUNT} thread
+     */
+    long[] values(int pc) {
+        return values[pc];
+    }
+
+    /**
+     * @return Counter values of the {@link Program#COUNT} thread, cleared if the thread is not in the list,
+     * to be filled in before the thread is {@link #addFilled added}
+     */
+    long[] valuesToFill(int pc) {
+        final var counter = values[pc];
+        if (!pcs.contains(pc)) {
+            Arrays.fill(counter, 0);
+        }
+        return counter;
+    }
+
+    /**
+     * Adds the {@link Program#COUNT} thread, keeping the counter values filled in through {@link #valuesToFill}.
+     */
+    void addFilled(int pc) {
+        pcs.add(pc);
+    }
+
+    int get(int index) {
+        return pcs.get(index);
+    }
+
+    int size() {
+        return pcs.size();
+    }
+
+    boolean isEmpty() {
+        return pcs.isEmpty();
+    }
+
+    void clear() {
+        pcs.clear();
+    }
+}
@@ -0,0 +1,311 @@
+package syspro.tm.engine;
+
+import syspro.tm.Configuration;
+import syspro.tm.ConfigurationProvider;
+import syspro.tm.RecordBatch;
+import syspro.tm.StreamMatcher;
+import syspro.tm.regex.Regex;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+/**
+ * Starts every pattern on the {@link PikeVmRegexEngine Pike VM}, which needs nothing beyond the NFA program,
+ * and promotes the patterns that turn out to be hot: to the {@link LazyDfaRegexEngine lazy DFA} after a few calls,
+ * and to a compiled DFA after many calls or input bytes. The compiled tier is a {@link BytecodeRegexEngine bytecode}
+ * class, or generated native code with a {@link NativeCompilationService}. It is built in the background,
+ * and the pattern stays on the lazy DFA until it is ready, so no matching call waits for a compiler.
+ * One-off patterns therefore never pay for a DFA, while hot ones end up on the fastest engine.
+ * <p>
+ * Thresholds come from {@link ConfigurationProvider configuration providers}.
+ * The transitions of a pattern are reported by {@link syspro.tm.CompiledRegex#tierHistory()}.
+ */
+public final class TieredRegexEngine extends AbstractRegexEngine<TieredRegexEngine.TieredMatcher> {
+    public static final long DEFAULT_LAZY_DFA_CALLS = 8;
+    public static final long DEFAULT_COMPILED_CALLS = 1000;
+    public static final long DEFAULT_COMPILED_BYTES = 1024 * 1024;
+    /**
+     * Builds the compiled tier of the engines that are not given an executor, on daemon threads that stop when idle.
+     */
+    private static final ThreadPoolExecutor BACKGROUND_COMPILER;
+
+    static {
+        final var threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        final var threadIndex = new AtomicInteger();
+        BACKGROUND_COMPILER = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final var thread = new Thread(runnable, "tiered-compiler-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        BACKGROUND_COMPILER.allowCoreThreadTimeOut(true);
+    }
+
+    private final long lazyDfaCalls;
+    private final long compiledCalls;
+    private final long compiledBytes;
+    private final AbstractRegexEngine<ByteMatcher> compiledEngine;
+    private final String compiledTierName;
+    private final Executor compiler;
+
+    /**
+     * Uses the thresholds of the configuration providers and the bytecode compiled tier.
+     */
+    public TieredRegexEngine() {
+        this(configuredThreshold(ConfigurationProvider::tieredLazyDfaCalls, DEFAULT_LAZY_DFA_CALLS),
+                configuredThreshold(ConfigurationProvider::tieredCompiledCalls, DEFAULT_COMPILED_CALLS),
+                configuredThreshold(ConfigurationProvider::tieredCompiledBytes, DEFAULT_COMPILED_BYTES),
+                null);
+    }
+
+    /**
+     * @param lazyDfaCalls  Calls of a pattern before it moves from the Pike VM to the lazy DFA
+     * @param compiledCalls Calls of a pattern before it moves to the compiled tier
+     * @param compiledBytes Input bytes matched by a pattern before it moves to the compiled tier
+     * @param service       Compiles native code for the compiled tier, {@code null} to generate bytecode instead
+     */
+    public TieredRegexEngine(long lazyDfaCalls, long compiledCalls, long compiledBytes, NativeCompilationService service) {
+        this(lazyDfaCalls, compiledCalls, compiledBytes, service, BACKGROUND_COMPILER);
+    }
+
+    /**
+     * @param compiler Runs the construction of the compiled tier, matching calls are served by the lazy DFA meanwhile
+     */
+    public TieredRegexEngine(long lazyDfaCalls, long compiledCalls, long compiledBytes, NativeCompilationService service, Executor compiler) {
+        if (lazyDfaCalls < 0) {
+            throw new IllegalArgumentException("Lazy DFA call threshold should be non-negative: " + lazyDfaCalls);
+        }
+        if (compiledCalls < 0) {
+            throw new IllegalArgumentException("Compiled tier call threshold should be non-negative: " + compiledCalls);
+        }
+        if (compiledBytes < 0) {
+            throw new IllegalArgumentException("Compiled tier byte threshold should be non-negative: " + compiledBytes);
+        }
+        if (compiler == null) {
+            throw new IllegalArgumentException("Compiler executor should be non-null");
+        }
+
+        this.lazyDfaCalls = lazyDfaCalls;
+        this.compiledCalls = compiledCalls;
+        this.compiledBytes = compiledBytes;
+        compiledEngine = service != null ? new NativeRegexEngine(service) : new BytecodeRegexEngine();
+        compiledTierName = service != null ? "native" : "bytecode";
+        this.compiler = compiler;
+    }
+
+    private static long configuredThreshold(ToLongFunction<ConfigurationProvider> threshold, long defaultValue) {
+        var result = defaultValue;
+        for (final var provider : Configuration.configurationProviders()) {
+            final var pick = threshold.applyAsLong(provider);
+            if (pick > 0) {
+                result = pick;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    TieredMatcher compile(Regex regex) {
+        return new TieredMatcher(this, regex);
+    }
+
+    @Override
+    boolean matches(TieredMatcher compiled, byte[] input) {
+        return compiled.matches(input);
+    }
+
+    @Override
+    boolean matches(TieredMatcher compiled, byte[] input, int from, int to) {
+        return compiled.matches(input, from, to);
+    }
+
+    @Override
+    int matchBatch(TieredMatcher compiled, RecordBatch batch, long[] results) {
+        return compiled.matchBatch(batch, results);
+    }
+
+    @Override
+    int matchWindows(TieredMatcher compiled, byte[] input, int windowSize, long[] results) {
+        return compiled.matchWindows(input, windowSize, results);
+    }
+
+    @Override
+    StreamMatcher streamMatcher(TieredMatcher compiled) {
+        return compiled.streamMatcher();
+    }
+
+    @Override
+    String tierHistory(TieredMatcher compiled) {
+        return compiled.history;
+    }
+
+    enum Tier {
+        PIKE_VM,
+        LAZY_DFA,
+        COMPILED
+    }
+
+    /**
+     * Counts the calls and input bytes of a pattern and moves it to the next tier once they reach its threshold.
+     * The counters are updated without synchronization, since a lost update only delays a promotion;
+     * the promotion itself is done by a single thread, while the others keep matching on the current tier.
+     * The compiled tier is built on the executor of the engine, a pattern that reaches its threshold
+     * on the Pike VM moves to the lazy DFA right away.
+     */
+    static final class TieredMatcher implements ByteMatcher {
+        private final TieredRegexEngine engine;
+        private final Regex regex;
+        private final Program program;
+        private final AtomicBoolean promoting = new AtomicBoolean();
+        private volatile Stage stage;
+        private volatile String history;
+        private long calls;
+        private long bytes;
+
+        TieredMatcher(TieredRegexEngine engine, Regex regex) {
+            this.engine = engine;
+            this.regex = regex;
+            program = Program.compile(regex, true);
+            stage = new Stage(Tier.PIKE_VM, new PikeVmMatcher(program));
+            history = "Pike VM";
+        }
+
+        /**
+         * @return Matcher of the current tier, after counting a call of {@code calls} inputs of {@code bytes} bytes in total
+         */
+        private ByteMatcher count(long calls, long bytes) {
+            final var current = stage;
+            if (current.tier == Tier.COMPILED) {
+                return current.matcher;
+            }
+
+            final var totalCalls = this.calls += calls;
+            final var totalBytes = this.bytes += bytes;
+            final Tier target;
+            if (totalCalls >= engine.compiledCalls || totalBytes >= engine.compiledBytes) {
+                target = Tier.COMPILED;
+            } else if (totalCalls >= engine.lazyDfaCalls) {
+                target = Tier.LAZY_DFA;
+            } else {
+                return current.matcher;
+            }
+            if (target == current.tier || !promoting.compareAndSet(false, true)) {
+                return current.matcher;
+            }
+
+            var serving = stage;
+            if (serving.tier.compareTo(target) >= 0) {
+                // Promoted by another thread in the meantime
+                promoting.set(false);
+                return serving.matcher;
+            }
+            if (serving.tier == Tier.PIKE_VM) {
+                serving = new Stage(Tier.LAZY_DFA, new LazyDfa(program, LazyDfaRegexEngine.DEFAULT_CACHE_BUDGET_BYTES));
+                history += " → lazy DFA at call " + totalCalls + " (" + totalBytes + " bytes)";
+                stage = serving;
+            }
+            if (target != Tier.COMPILED) {
+                promoting.set(false);
+                return serving.matcher;
+            }
+            try {
+                engine.compiler.execute(() -> promoteToCompiled(totalCalls, totalBytes));
+            } catch (RejectedExecutionException _) {
+                // The executor is shut down, the promotion flag stays set and the pattern stays on the lazy DFA
+                history += " → " + engine.compiledTierName + " rejected at call " + totalCalls;
+            }
+            return serving.matcher;
+        }
+
+        /**
+         * Builds the compiled tier and switches to it, called on the compiler executor.
+         * A failed compile leaves the promotion flag set, so the pattern stays on the lazy DFA for good.
+         */
+        private void promoteToCompiled(long calls, long bytes) {
+            final ByteMatcher matcher;
+            try {
+                matcher = engine.compiledEngine.compile(regex);
+            } catch (RuntimeException e) {
+                history += " → " + engine.compiledTierName + " failed at call " + calls + " (" + e.getMessage() + ")";
+                return;
+            }
+            // DFAs over the state limit stay lazy
+            final var name = matcher instanceof LazyDfa ? "lazy DFA" : engine.compiledTierName;
+            history += " → " + name + " at call " + calls + " (" + bytes + " bytes)";
+            stage = new Stage(Tier.COMPILED, matcher);
+            promoting.set(false);
+        }
+
+        @Override
+        public boolean matches(byte[] input) {
+            return count(1, input.length).matches(input);
+        }
+
+        @Override
+        public boolean matches(byte[] input, int from, int to) {
+            return count(1, to - from).matches(input, from, to);
+        }
+
+        @Override
+        public int matchBatch(RecordBatch batch, long[] results) {
+            // Batches that the tier matches one record at a time are counted per record
+            final var count = stage.matcher.matchBatch(batch, results);
+            if (count >= 0) {
+                count(batch.size(), batch.offsets[batch.size()] - batch.offsets[0]);
+            }
+            return count;
+        }
+
+        @Override
+        public int matchWindows(byte[] input, int windowSize, long[] results) {
+            final var count = stage.matcher.matchWindows(input, windowSize, results);
+            if (count >= 0) {
+                count(RecordBatch.windowCount(input.length, windowSize), input.length);
+            }
+            return count;
+        }
+
+        @Override
+        public StreamMatcher streamMatcher() {
+            return stage.matcher.streamMatcher();
+        }
+    }
+
+    private static final class Stage {
+        final Tier tier;
+        final ByteMatcher matcher;
+
+        Stage(Tier tier, ByteMatcher matcher) {
+            this.tier = tier;
+            this.matcher = matcher;
+        }
+    }
+
+    private static final class PikeVmMatcher implements ByteMatcher {
+        private final Program program;
+
+        PikeVmMatcher(Program program) {
+            this.program = program;
+        }
+
+        @Override
+        public boolean matches(byte[] input) {
+            return PikeVmRegexEngine.simulate(program, input, 0, input.length);
+        }
+
+        @Override
+        public boolean matches(byte[] input, int from, int to) {
+            return PikeVmRegexEngine.simulate(program, input, from, to);
+        }
+
+        @Override
+        public StreamMatcher streamMatcher() {
+            return new PikeVmRegexEngine.Streaming(program, false);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package syspro.tm.engine;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import syspro.tm.regex.ByteSet;
+
+/**
+ * Tests a vector of 16 to 64 bytes per step with nibble tables: byte {@code b} belongs to the set
+ * iff {@code low[b & 0xF] & high[b >>> 4]} is non-zero, both lookups being a single shuffle.
+ * <p>
+ * Every high nibble selects a row of 16 low nibbles. Each distinct non-empty row gets its own bit, in {@code high}
+ * at the high nibbles of that row and in {@code low} at the low nibbles it contains. A set has at most 16 distinct
+ * rows, so a second pair of tables covers the rows past the 8 bits of the first.
+ * Only loaded when {@link ByteScanner} has found the {@code jdk.incubator.vector} module.
+ */
+final class VectorByteScanner extends ByteScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private final ByteVector low;
+    private final ByteVector high;
+    /**
+     * Tables of the rows past the first 8, {@code null} if there are none.
+     */
+    private final ByteVector secondLow;
+    private final ByteVector secondHigh;
+    private final ByteScanner tail;
+
+    VectorByteScanner(ByteSet set) {
+        final var rows = new int[16];
+        for (int b = 0; b < 256; b++) {
+            if (set.contains(b)) {
+                rows[b >>> 4] |= 1 << (b & 0xF);
+            }
+        }
+
+        final var length = SPECIES.length();
+        final var lowTables = new byte[2][length];
+        final var highTables = new byte[2][length];
+        final var distinct = new int[16];
+        int distinctCount = 0;
+        for (int highNibble = 0; highNibble < 16; highNibble++) {
+            final var row = rows[highNibble];
+            if (row == 0) {
+                continue;
+            }
+            var index = 0;
+            while (index < distinctCount && distinct[index] != row) {
+                index++;
+            }
+            if (index == distinctCount) {
+                distinct[distinctCount++] = row;
+                for (int lowNibble = 0; lowNibble < 16; lowNibble++) {
+                    if ((row & (1 << lowNibble)) != 0) {
+                        lowTables[index / 8][lowNibble] |= (byte) (1 << (index % 8));
+                    }
+                }
+            }
+            highTables[index / 8][highNibble] |= (byte) (1 << (index % 8));
+        }
+
+        low = ByteVector.fromArray(SPECIES, lowTables[0], 0);
+        high = ByteVector.fromArray(SPECIES, highTables[0], 0);
+        secondLow = distinctCount > 8 ? ByteVector.fromArray(SPECIES, lowTables[1], 0) : null;
+        secondHigh = distinctCount > 8 ? ByteVector.fromArray(SPECIES, highTables[1], 0) : null;
+        tail = new Scalar(set);
+    }
+
+    /**
+     * @return Whether the preferred vectors hold at least a full nibble table
+     */
+    static boolean isSupported() {
+        return SPECIES.length() >= 16;
+    }
+
+    @Override
+    public int indexOf(byte[] input, int from, int to) {
+        final var length = SPECIES.length();
+        var i = from;
+        for (; i <= to - length; i += length) {
+            final var bytes = ByteVector.fromArray(SPECIES, input, i);
+            final var lowNibbles = bytes.and((byte) 0xF);
+            final var highNibbles = bytes.lanewise(VectorOperators.LSHR, 4).and((byte) 0xF);
+            var hits = lowNibbles.selectFrom(low).and(highNibbles.selectFrom(high));
+            if (secondLow != null) {
+                hits = hits.or(lowNibbles.selectFrom(secondLow).and(highNibbles.selectFrom(secondHigh)));
+            }
+            final var found = hits.compare(VectorOperators.NE, 0);
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return tail.indexOf(input, i, to);
+    }
+}
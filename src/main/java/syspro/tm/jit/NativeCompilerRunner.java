@@ -10,6 +10,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
@@ -18,33 +19,41 @@ public final class NativeCompilerRunner {
     private static volatile Optional<String> pickedUnixCppCompiler;
     private static volatile Optional<String> pickedUnixCCompiler;
     private static volatile VisualStudioEnvironment visualStudioEnvironment;
+    private static final ConcurrentHashMap<String, String> unixCompilerVersions = new ConcurrentHashMap<>();
+    /**
+     * Sources are compiled in a directory of their own under that name, so that the options do not depend on the path.
+     */
+    private static final String SOURCE_NAME = "regex";
 
     private NativeCompilerRunner() {
     }
 
+    /**
+     * Compiles the code into a shared library, or reuses the library compiled from the same code with the same
+     * compiler and options by this or an earlier run, see {@link NativeLibraryCache}.
+     *
+     * @return Library file, or {@code null} if the compiler has failed
+     */
     public static Path compile(String code, LanguageVersion languageVersion) {
         final var suffix = switch (languageVersion.language) {
             case Cpp -> ".cpp";
             case C -> ".c";
         };
         try {
-            final var sourceFile = Files.createTempFile("regex", suffix);
-            sourceFile.toFile().deleteOnExit();
-            Files.writeString(sourceFile, code);
-
             if (OS.current() == OS.WINDOWS) {
-                return compileMicrosoft(languageVersion, sourceFile, suffix);
+                return compileMicrosoft(code, languageVersion, suffix);
             }
 
-            return compileUnix(languageVersion, sourceFile, suffix);
+            return compileUnix(code, languageVersion, suffix);
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private static Path compileMicrosoft(LanguageVersion languageVersion, Path sourceFile, String suffix) throws IOException, InterruptedException {
+    private static Path compileMicrosoft(String code, LanguageVersion languageVersion, String suffix) throws IOException, InterruptedException {
         final var visualStudioEnvironment = visualStudioEnvironment();
         final var pickedCompiler = visualStudioEnvironment.clExe;
+        final var sourceName = SOURCE_NAME + suffix;
         final var args = new ArrayList<String>();
         args.add("/nologo");
         args.add("/std:" + formatMicrosoftLanguageVersion(languageVersion));
@@ -53,46 +62,82 @@ public final class NativeCompilerRunner {
         args.add("/EHsc");
         args.add("/DNDEBUG");
         args.add("/LD");
-        args.add('"' + sourceFile.toAbsolutePath().toString() + '"');
+        args.add('"' + sourceName + '"');
         for (final var provider : Configuration.configurationProviders()) {
             provider.adjustMicrosoftCompilerOptions(pickedCompiler, args);
         }
         args.addFirst(pickedCompiler);
-        final var clOutput = runProcess(visualStudioEnvironment.environment, args.toArray(new String[0]));
-        final var dllFile = sourceFile.resolveSibling(sourceFile.getFileName().toString().replace(suffix, ".dll"));
-        if (dllFile.toFile().exists()) {
-            return dllFile;
-        }
-        System.err.println(clOutput);
-        return null;
+        // The path of cl.exe contains the toolset version, the environment points to the headers and libraries
+        final var keyParts = new ArrayList<>(args);
+        keyParts.add(new TreeMap<>(visualStudioEnvironment.environment).toString());
+        return NativeLibraryCache.current().get(cacheKey(code, keyParts), ".dll", directory -> {
+            Files.writeString(directory.resolve(sourceName), code);
+            final var clOutput = runProcess(visualStudioEnvironment.environment, directory, args.toArray(new String[0]));
+            final var dllFile = directory.resolve(SOURCE_NAME + ".dll");
+            if (dllFile.toFile().exists()) {
+                return dllFile;
+            }
+            System.err.println(clOutput);
+            return null;
+        });
     }
 
-    private static Path compileUnix(LanguageVersion languageVersion, Path sourceFile, String suffix) throws IOException, InterruptedException {
+    private static Path compileUnix(String code, LanguageVersion languageVersion, String suffix) throws IOException, InterruptedException {
         final var pickedCompiler = pickedUnixCompiler(languageVersion.language);
         final var libExtension = switch (OS.current()) {
             case WINDOWS -> ".dll";
             case LINUX -> ".so";
             case MACOS -> ".dylib";
         };
-        final var libFile = sourceFile.resolveSibling(sourceFile.getFileName().toString().replace(suffix, libExtension));
+        final var sourceName = SOURCE_NAME + suffix;
+        final var libName = SOURCE_NAME + libExtension;
         final var args = new ArrayList<String>();
         args.add("-shared");
         args.add("-std=" + formatUnixLanguageVersion(languageVersion));
         args.add("-O2");
         args.add("-o");
-        args.add(libFile.toAbsolutePath().toString());
+        args.add(libName);
         args.add("-fPIC");
-        args.add(sourceFile.toAbsolutePath().toString());
+        args.add(sourceName);
         for (final var provider : Configuration.configurationProviders()) {
             provider.adjustUnixCompilerOptions(pickedCompiler, args);
         }
         args.addFirst(pickedCompiler);
-        final var clOutput = runProcess(args.toArray(new String[0]));
-        if (libFile.toFile().exists()) {
-            return libFile;
+        final var keyParts = new ArrayList<>(args);
+        keyParts.add(unixCompilerVersion(pickedCompiler));
+        return NativeLibraryCache.current().get(cacheKey(code, keyParts), libExtension, directory -> {
+            Files.writeString(directory.resolve(sourceName), code);
+            final var clOutput = runProcess(null, directory, args.toArray(new String[0]));
+            final var libFile = directory.resolve(libName);
+            if (libFile.toFile().exists()) {
+                return libFile;
+            }
+            System.err.println(clOutput);
+            return null;
+        });
+    }
+
+    /**
+     * @param compilation Compiler, its options and anything else that affects the output besides the code
+     */
+    private static String cacheKey(String code, List<String> compilation) {
+        final var parts = new ArrayList<String>();
+        parts.add(OS.current().name());
+        parts.add(Architecture.current().name());
+        parts.addAll(compilation);
+        parts.add(code);
+        return NativeLibraryCache.key(parts);
+    }
+
+    private static String unixCompilerVersion(String compiler) throws IOException, InterruptedException {
+        final var cachedValue = unixCompilerVersions.get(compiler);
+        if (cachedValue != null) {
+            return cachedValue;
         }
-        System.err.println(clOutput);
-        return null;
+
+        final var version = runProcess(compiler, "--version");
+        unixCompilerVersions.put(compiler, version);
+        return version;
     }
 
     @SuppressWarnings("OptionalAssignedToNull")
@@ -244,7 +289,11 @@ public final class NativeCompilerRunner {
     }
 
     private static String runProcess(Map<String, String> environment, String... command) throws IOException, InterruptedException {
-        final var builder = new ProcessBuilder(command).directory(new File(System.getProperty("java.io.tmpdir")));
+        return runProcess(environment, Path.of(System.getProperty("java.io.tmpdir")), command);
+    }
+
+    private static String runProcess(Map<String, String> environment, Path directory, String... command) throws IOException, InterruptedException {
+        final var builder = new ProcessBuilder(command).directory(directory.toFile());
         if (environment != null && !environment.isEmpty()) {
             builder.environment().putAll(environment);
         }
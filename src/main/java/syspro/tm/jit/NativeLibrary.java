@@ -1,17 +1,37 @@
 package syspro.tm.jit;
 
+import syspro.tm.RecordBatch;
+
 import java.lang.foreign.*;
 import java.lang.invoke.MethodHandle;
 import java.nio.file.Path;
 import java.util.HashMap;
 
+/**
+ * Matching functions are called without any allocation: inputs of up to {@link #CRITICAL_INPUT_LIMIT} bytes
+ * are passed straight from the Java heap by critical downcalls, longer ones are copied to a per-thread scratch segment.
+ */
 public final class NativeLibrary {
     private static final FunctionDescriptor MATCHES_DESCRIPTOR = FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, sizeIntegralLayout());
+    private static final FunctionDescriptor MATCHES_BATCH_DESCRIPTOR = FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS, sizeIntegralLayout(), ValueLayout.ADDRESS);
+    private static final FunctionDescriptor MATCHES_WINDOWS_DESCRIPTOR = FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, sizeIntegralLayout(), sizeIntegralLayout(), ValueLayout.ADDRESS);
+    /**
+     * Critical downcalls hold off the garbage collector while they run, so only inputs up to that many bytes
+     * are matched by them. Longer inputs take long enough to match that copying them costs little in comparison.
+     */
+    public static final long CRITICAL_INPUT_LIMIT = 1 << 20;
+    private static final ThreadLocal<MemorySegment> scratch = ThreadLocal.withInitial(() -> MemorySegment.NULL);
     private final Path libraryFile;
     private final Arena arena;
     private final SymbolLookup lookup;
     private final HashMap<String, MethodHandle> functions = new HashMap<>();
+    private final HashMap<String, MethodHandle> criticalFunctions = new HashMap<>();
     private MethodHandle matchesHandle;
+    private MethodHandle matchesCriticalHandle;
+    private MethodHandle matchesBatchHandle;
+    private MethodHandle matchesBatchCriticalHandle;
+    private MethodHandle matchesWindowsHandle;
+    private MethodHandle matchesWindowsCriticalHandle;
 
     NativeLibrary(Path libraryFile) {
         this.libraryFile = libraryFile;
@@ -41,28 +61,202 @@ public final class NativeLibrary {
         return functions.computeIfAbsent(name, _ -> NativeLibraries.linker.downcallHandle(findSymbol(name), function));
     }
 
+    /**
+     * @return Handle of a short function that neither blocks nor calls back into Java.
+     * Its pointer arguments may be heap segments, which are passed without copying.
+     */
+    public MethodHandle findCriticalFunction(String name, FunctionDescriptor function) {
+        return criticalFunctions.computeIfAbsent(name, _ -> NativeLibraries.linker.downcallHandle(findSymbol(name), function, Linker.Option.critical(true)));
+    }
+
     public void setMatchesFunction(String name) {
         final var handle = matchesHandle;
         if (handle != null) {
             throw new IllegalStateException("Match function is already set for `" + libraryName() + "` library.");
         }
 
+        matchesCriticalHandle = findCriticalFunction(name, MATCHES_DESCRIPTOR);
         matchesHandle = findFunction(name, MATCHES_DESCRIPTOR);
     }
 
+    /**
+     * Sets the function that matches a batch of records with a single call:
+     * {@code int name(char* data, const int32_t* offsets, size_t count, uint64_t* results)}.
+     * Record {@code i} starts at {@code data + offsets[i] - offsets[0]}, the function sets its bit in the zeroed
+     * {@code results} bitmap if it matches and returns the number of matching records.
+     */
+    public void setMatchesBatchFunction(String name) {
+        final var handle = matchesBatchHandle;
+        if (handle != null) {
+            throw new IllegalStateException("Batch match function is already set for `" + libraryName() + "` library.");
+        }
+
+        matchesBatchCriticalHandle = findCriticalFunction(name, MATCHES_BATCH_DESCRIPTOR);
+        matchesBatchHandle = findFunction(name, MATCHES_BATCH_DESCRIPTOR);
+    }
+
+    /**
+     * Sets the function that matches all windows of an input with a single call:
+     * {@code int name(char* input, size_t length, size_t window, uint64_t* results)}.
+     * Window {@code i} is {@code input[i * window, (i + 1) * window)} cut off at the end of the input, the function
+     * sets its bit in the zeroed {@code results} bitmap if it matches and returns the number of matching windows.
+     */
+    public void setMatchesWindowsFunction(String name) {
+        final var handle = matchesWindowsHandle;
+        if (handle != null) {
+            throw new IllegalStateException("Window match function is already set for `" + libraryName() + "` library.");
+        }
+
+        matchesWindowsCriticalHandle = findCriticalFunction(name, MATCHES_WINDOWS_DESCRIPTOR);
+        matchesWindowsHandle = findFunction(name, MATCHES_WINDOWS_DESCRIPTOR);
+    }
+
     public boolean callMatches(byte[] input) {
-        try (final var arena = Arena.ofConfined()) {
-            final var inputBuffer = arena.allocateFrom(ValueLayout.JAVA_BYTE, input);
-            final var pointerSize = ValueLayout.ADDRESS.byteSize();
-            final int result = switch ((int) pointerSize) {
-                case 8 -> (int) matchesHandle.invokeExact(inputBuffer, (long) input.length);
-                case 4 -> (int) matchesHandle.invokeExact(inputBuffer, input.length);
-                default ->
-                        throw new UnsupportedOperationException(pointerSize + " byte wide pointer architecture is not supported.");
-            };
-            return result != 0;
+        return callMatches(input, 0, input.length);
+    }
+
+    /**
+     * @return Whether {@code input[from, to)} matches
+     */
+    public boolean callMatches(byte[] input, int from, int to) {
+        return callMatches(MemorySegment.ofArray(input).asSlice(from, to - from));
+    }
+
+    /**
+     * @param input Native or heap segment owned by the caller, it is not copied unless it is a long heap segment
+     * @return Whether the entire segment matches
+     */
+    public boolean callMatches(MemorySegment input) {
+        final var length = input.byteSize();
+        try {
+            if (length <= CRITICAL_INPUT_LIMIT) {
+                return invokeMatches(matchesCriticalHandle, input, length) != 0;
+            }
+            if (input.isNative()) {
+                return invokeMatches(matchesHandle, input, length) != 0;
+            }
+            final var buffer = scratch(length);
+            MemorySegment.copy(input, 0, buffer, 0, length);
+            return invokeMatches(matchesHandle, buffer, length) != 0;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Matches the records {@code data[offsets[i], offsets[i + 1])} with a single call of the batch function.
+     * The arrays are checked like those of a {@link RecordBatch} before they reach native code.
+     *
+     * @param results Zeroed bitmap, the bit of every matching record is set
+     * @return Number of matching records
+     * @throws IllegalArgumentException The offsets are invalid or the bitmap is too short
+     */
+    public int callMatchesBatch(byte[] data, int[] offsets, long[] results) {
+        final var handle = matchesBatchHandle;
+        if (handle == null) {
+            throw new IllegalStateException("Batch match function is not set for `" + libraryName() + "` library.");
+        }
+
+        RecordBatch.checkOffsets(data, offsets);
+        final var count = offsets.length - 1;
+        final var words = RecordBatch.checkBitmap(results, count);
+        final var first = offsets[0];
+        final var length = offsets[count] - first;
+        try {
+            if (length <= CRITICAL_INPUT_LIMIT) {
+                final var dataSegment = MemorySegment.ofArray(data).asSlice(first, length);
+                return invokeMatchesBatch(matchesBatchCriticalHandle, dataSegment, MemorySegment.ofArray(offsets), count, MemorySegment.ofArray(results));
+            }
+
+            // Results first, since they need the strictest alignment
+            final var resultsBytes = (long) words * Long.BYTES;
+            final var offsetsBytes = (long) offsets.length * Integer.BYTES;
+            final var buffer = scratch(resultsBytes + offsetsBytes + length);
+            final var resultsBuffer = buffer.asSlice(0, resultsBytes).fill((byte) 0);
+            final var offsetsBuffer = buffer.asSlice(resultsBytes, offsetsBytes);
+            final var dataBuffer = buffer.asSlice(resultsBytes + offsetsBytes, length);
+            MemorySegment.copy(offsets, 0, offsetsBuffer, ValueLayout.JAVA_INT, 0, offsets.length);
+            MemorySegment.copy(data, first, dataBuffer, ValueLayout.JAVA_BYTE, 0, length);
+            final var matched = invokeMatchesBatch(handle, dataBuffer, offsetsBuffer, count, resultsBuffer);
+            MemorySegment.copy(resultsBuffer, ValueLayout.JAVA_LONG, 0, results, 0, words);
+            return matched;
         } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Matches every window {@code input[i * window, (i + 1) * window)} of the input with a single call of the window function.
+     *
+     * @param results Zeroed bitmap, the bit of every matching window is set
+     * @return Number of matching windows
+     * @throws IllegalArgumentException The window size is not positive or the bitmap is too short
+     */
+    public int callMatchesWindows(byte[] input, int window, long[] results) {
+        final var handle = matchesWindowsHandle;
+        if (handle == null) {
+            throw new IllegalStateException("Window match function is not set for `" + libraryName() + "` library.");
+        }
+
+        final var length = input.length;
+        final var words = RecordBatch.checkBitmap(results, RecordBatch.windowCount(length, window));
+        try {
+            if (length <= CRITICAL_INPUT_LIMIT) {
+                return invokeMatchesWindows(matchesWindowsCriticalHandle, MemorySegment.ofArray(input), length, window, MemorySegment.ofArray(results));
+            }
+
+            final var resultsBytes = (long) words * Long.BYTES;
+            final var buffer = scratch(resultsBytes + length);
+            final var resultsBuffer = buffer.asSlice(0, resultsBytes).fill((byte) 0);
+            final var inputBuffer = buffer.asSlice(resultsBytes, length);
+            MemorySegment.copy(input, 0, inputBuffer, ValueLayout.JAVA_BYTE, 0, length);
+            final var matched = invokeMatchesWindows(handle, inputBuffer, length, window, resultsBuffer);
+            MemorySegment.copy(resultsBuffer, ValueLayout.JAVA_LONG, 0, results, 0, words);
+            return matched;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int invokeMatches(MethodHandle handle, MemorySegment input, long length) throws Throwable {
+        final var pointerSize = ValueLayout.ADDRESS.byteSize();
+        return switch ((int) pointerSize) {
+            case 8 -> (int) handle.invokeExact(input, length);
+            case 4 -> (int) handle.invokeExact(input, (int) length);
+            default ->
+                    throw new UnsupportedOperationException(pointerSize + " byte wide pointer architecture is not supported.");
+        };
+    }
+
+    private static int invokeMatchesBatch(MethodHandle handle, MemorySegment data, MemorySegment offsets, int count, MemorySegment results) throws Throwable {
+        final var pointerSize = ValueLayout.ADDRESS.byteSize();
+        return switch ((int) pointerSize) {
+            case 8 -> (int) handle.invokeExact(data, offsets, (long) count, results);
+            case 4 -> (int) handle.invokeExact(data, offsets, count, results);
+            default ->
+                    throw new UnsupportedOperationException(pointerSize + " byte wide pointer architecture is not supported.");
+        };
+    }
+
+    private static int invokeMatchesWindows(MethodHandle handle, MemorySegment input, int length, int window, MemorySegment results) throws Throwable {
+        final var pointerSize = ValueLayout.ADDRESS.byteSize();
+        return switch ((int) pointerSize) {
+            case 8 -> (int) handle.invokeExact(input, (long) length, (long) window, results);
+            case 4 -> (int) handle.invokeExact(input, length, window, results);
+            default ->
+                    throw new UnsupportedOperationException(pointerSize + " byte wide pointer architecture is not supported.");
+        };
+    }
+
+    /**
+     * @return Scratch segment of the current thread with at least {@code size} bytes, reused by later calls
+     */
+    private static MemorySegment scratch(long size) {
+        var segment = scratch.get();
+        if (segment.byteSize() < size) {
+            segment = Arena.ofAuto().allocate(Math.max(size, 2 * segment.byteSize()), Long.BYTES);
+            scratch.set(segment);
+        }
+        return segment;
+    }
 }
@@ -0,0 +1,292 @@
+package syspro.tm.jit;
+
+import syspro.tm.Configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Directory of compiled native libraries shared by all runs of a user, named by a hash of everything that affects
+ * the output: the source code, the compiler, its version, its options and the target platform.
+ * <p>
+ * Cached libraries get loaded into the process, so the directory is created accessible to its owner only,
+ * and a directory or library that belongs to someone else, or that others may write to, is never trusted.
+ * <p>
+ * A library is compiled in a private temporary directory and renamed into place atomically, so concurrent writers
+ * never expose a partial file; the last of them simply replaces an identical library. Hits update the modification
+ * time of the library, and the least recently used ones are deleted once the directory exceeds its size limit.
+ */
+public final class NativeLibraryCache {
+    public static final long DEFAULT_SIZE_LIMIT_BYTES = 256L * 1024 * 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    /**
+     * Temporary directories older than that are left over by crashed processes and get deleted.
+     */
+    private static final Duration ABANDONED_AFTER = Duration.ofHours(1);
+    private static volatile NativeLibraryCache current;
+
+    private final Path directory;
+    private final long sizeLimitBytes;
+    private volatile UserPrincipal owner;
+
+    public NativeLibraryCache(Path directory, long sizeLimitBytes) {
+        if (sizeLimitBytes <= 0) {
+            throw new IllegalArgumentException("Cache size limit should be positive: " + sizeLimitBytes);
+        }
+
+        this.directory = directory;
+        this.sizeLimitBytes = sizeLimitBytes;
+    }
+
+    /**
+     * @return Cache in the directory picked by the configuration providers
+     */
+    public static NativeLibraryCache current() {
+        final var cache = current;
+        if (cache != null) {
+            return cache;
+        }
+
+        var directory = defaultDirectory();
+        var sizeLimitBytes = DEFAULT_SIZE_LIMIT_BYTES;
+        for (final var provider : Configuration.configurationProviders()) {
+            final var pick = provider.nativeLibraryCacheDirectory();
+            if (pick != null) {
+                directory = pick;
+            }
+            final var limit = provider.nativeLibraryCacheSizeLimit();
+            if (limit > 0) {
+                sizeLimitBytes = limit;
+            }
+        }
+        return current = new NativeLibraryCache(directory, sizeLimitBytes);
+    }
+
+    /**
+     * @return {@code $XDG_CACHE_HOME/syspro-regex} or {@code ~/.cache/syspro-regex},
+     * and a directory named after the user in {@literal java.io.tmpdir} if there is no home directory
+     */
+    private static Path defaultDirectory() {
+        final var cacheHome = System.getenv("XDG_CACHE_HOME");
+        if (cacheHome != null && !cacheHome.isEmpty() && Path.of(cacheHome).isAbsolute()) {
+            return Path.of(cacheHome, "syspro-regex");
+        }
+        final var home = System.getProperty("user.home");
+        if (home != null && !home.isEmpty() && !home.equals("?")) {
+            return Path.of(home, ".cache", "syspro-regex");
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "syspro-regex-cache-" + System.getProperty("user.name"));
+    }
+
+    /**
+     * @param parts Everything that affects the compiled library
+     * @return Content address of the library
+     */
+    public static String key(List<String> parts) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            for (final var part : parts) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                // Separator, so that moving text from one part to the next changes the key
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param compiler Compiles the library in the given empty directory, returns the library file or {@code null}
+     * @return Cached library, or {@code null} if it was not cached and the compiler has failed
+     * @throws IOException The directory cannot be created, or it is not private to the current user
+     */
+    public Path get(String key, String extension, Compiler compiler) throws IOException, InterruptedException {
+        final var owner = checkedOwner();
+        final var library = directory.resolve(key + extension);
+        if (isTrusted(library, owner)) {
+            try {
+                Files.setLastModifiedTime(library, FileTime.from(Instant.now()));
+                return library;
+            } catch (IOException _) {
+                // Evicted by another process in the meantime, or not ours to touch: compiled again and replaced
+            }
+        }
+
+        final var workDirectory = Files.createTempDirectory(directory, key + TEMPORARY_SUFFIX);
+        try {
+            final var output = compiler.compile(workDirectory);
+            if (output == null) {
+                return null;
+            }
+            Files.move(output, library, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            deleteRecursively(workDirectory);
+        }
+        trim(library);
+        return library;
+    }
+
+    /**
+     * Creates the directory on the first call and checks that it is private to the current user.
+     *
+     * @return Owner of the directory
+     */
+    private UserPrincipal checkedOwner() throws IOException {
+        var result = owner;
+        if (result != null) {
+            return result;
+        }
+
+        final var posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            final var parent = directory.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try {
+                if (posix) {
+                    Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectory(directory);
+                }
+            } catch (FileAlreadyExistsException _) {
+                // Created by another process, checked below like any existing directory
+            }
+        }
+
+        final var attributes = Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isDirectory()) {
+            throw new IOException("Native library cache " + directory + " is not a directory");
+        }
+        final var user = currentUser();
+        result = Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS);
+        if (!result.equals(user)) {
+            throw new IOException("Native library cache " + directory + " belongs to " + result.getName() + ", not to " + user.getName());
+        }
+        if (posix) {
+            final var permissions = Files.readAttributes(directory, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS).permissions();
+            if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException("Native library cache " + directory + " is writable by other users: "
+                        + PosixFilePermissions.toString(permissions));
+            }
+        }
+        return owner = result;
+    }
+
+    /**
+     * @return Whether the library is a regular file of the owner of the directory, rather than a link or a file
+     * planted by someone else before the directory was private
+     */
+    private static boolean isTrusted(Path library, UserPrincipal owner) throws IOException {
+        try {
+            return Files.isRegularFile(library, LinkOption.NOFOLLOW_LINKS) && Files.getOwner(library, LinkOption.NOFOLLOW_LINKS).equals(owner);
+        } catch (NoSuchFileException _) {
+            return false;
+        }
+    }
+
+    /**
+     * @return Owner of the files this process creates, which is not always the user named by {@literal user.name}
+     */
+    private static UserPrincipal currentUser() throws IOException {
+        final var probe = Files.createTempFile("syspro-regex-owner", TEMPORARY_SUFFIX);
+        try {
+            return Files.getOwner(probe);
+        } finally {
+            Files.deleteIfExists(probe);
+        }
+    }
+
+    /**
+     * Deletes the least recently used libraries until the cache fits its size limit, keeping the given one.
+     */
+    private void trim(Path keep) throws IOException {
+        final var libraries = new ArrayList<Entry>();
+        long totalBytes = 0;
+        final var abandonedBefore = Instant.now().minus(ABANDONED_AFTER);
+        try (var stream = Files.newDirectoryStream(directory)) {
+            for (final var path : stream) {
+                final BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException _) {
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    if (path.getFileName().toString().contains(TEMPORARY_SUFFIX)
+                            && attributes.lastModifiedTime().toInstant().isBefore(abandonedBefore)) {
+                        deleteRecursively(path);
+                    }
+                    continue;
+                }
+                libraries.add(new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+                totalBytes += attributes.size();
+            }
+        }
+
+        libraries.sort(Comparator.comparing(entry -> entry.lastUsed));
+        for (final var entry : libraries) {
+            if (totalBytes <= sizeLimitBytes) {
+                break;
+            }
+            if (entry.path.equals(keep)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(entry.path);
+            } catch (IOException _) {
+                // Still loaded on Windows, it gets deleted by a later trim
+                continue;
+            }
+            totalBytes -= entry.size;
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (var stream = Files.walk(path)) {
+            for (final var file : stream.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (NoSuchFileException _) {
+            // Deleted by another process
+        } catch (UncheckedIOException e) {
+            if (!(e.getCause() instanceof NoSuchFileException)) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Compiler {
+        Path compile(Path workDirectory) throws IOException, InterruptedException;
+    }
+
+    private static final class Entry {
+        final Path path;
+        final long size;
+        final FileTime lastUsed;
+
+        Entry(Path path, long size, FileTime lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
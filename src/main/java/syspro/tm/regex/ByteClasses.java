@@ -0,0 +1,123 @@
+package syspro.tm.regex;
+
+import java.util.Arrays;
+
+/**
+ * Coarsest partition of all byte values such that every {@link RegexCharacter} of a {@link Regex}
+ * either contains a whole class or none of its bytes. Automata can use classes instead of bytes as their alphabet.
+ */
+public final class ByteClasses {
+    public static final int ALPHABET_SIZE = 256;
+
+    private final byte[] classes;
+    private final int count;
+    private final int[] representatives;
+
+    private ByteClasses(byte[] classes, int count) {
+        this.classes = classes;
+        this.count = count;
+        this.representatives = new int[count];
+        for (int b = ALPHABET_SIZE - 1; b >= 0; b--) {
+            representatives[classOf(b)] = b;
+        }
+    }
+
+    public static ByteClasses of(Regex regex) {
+        if (regex == null) {
+            throw new IllegalArgumentException("Regex should be non-null");
+        }
+
+        final var builder = new Builder();
+        regex.accept(builder);
+        return new ByteClasses(builder.classes, builder.count);
+    }
+
+    /**
+     * @return Number of classes, between 1 and {@link #ALPHABET_SIZE}
+     */
+    public int count() {
+        return count;
+    }
+
+    public int classOf(int b) {
+        return Byte.toUnsignedInt(classes[b & 0xFF]);
+    }
+
+    /**
+     * @return Smallest byte value of the class
+     */
+    public int representative(int byteClass) {
+        if (byteClass < 0 || byteClass >= count) {
+            throw new IllegalArgumentException("No such byte class: " + byteClass);
+        }
+        return representatives[byteClass];
+    }
+
+    /**
+     * @return Map from every byte value to its unsigned class number, classes are numbered by their smallest byte
+     */
+    public byte[] toArray() {
+        return classes.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ByteClasses that && Arrays.equals(classes, that.classes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(classes);
+    }
+
+    @Override
+    public String toString() {
+        return "ByteClasses[" + count + "]";
+    }
+
+    private static final class Builder implements RegexVisitor<Void> {
+        private byte[] classes = new byte[ALPHABET_SIZE];
+        private int count = 1;
+
+        @Override
+        public Void visitSingleCharacter(Regex.SingleCharacter node) {
+            // Split every class into the bytes inside and outside the character set
+            final var renumbered = new int[2 * count];
+            Arrays.fill(renumbered, -1);
+            final var set = node.character.byteSet();
+            final var refined = new byte[ALPHABET_SIZE];
+            int newCount = 0;
+            for (int b = 0; b < ALPHABET_SIZE; b++) {
+                final var key = 2 * Byte.toUnsignedInt(classes[b]) + (set.contains(b) ? 1 : 0);
+                if (renumbered[key] < 0) {
+                    renumbered[key] = newCount++;
+                }
+                refined[b] = (byte) renumbered[key];
+            }
+            classes = refined;
+            count = newCount;
+            return null;
+        }
+
+        @Override
+        public Void visitAlternation(Regex.Alternation node) {
+            for (final var option : node) {
+                option.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitConcatenation(Regex.Concatenation node) {
+            for (final var part : node) {
+                part.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitRepetition(Regex.Repetition node) {
+            return node.argument.accept(this);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package syspro.tm.regex;
+
+import syspro.tm.Utils;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of byte values, stored as a 256-bit mask.
+ */
+public final class ByteSet {
+    public static final ByteSet EMPTY = new ByteSet(new long[4]);
+    public static final ByteSet ALL = new ByteSet(new long[]{-1L, -1L, -1L, -1L});
+
+    private final long[] words;
+
+    private ByteSet(long[] words) {
+        this.words = words;
+    }
+
+    public static ByteSet of(int b) {
+        checkByte(b);
+        final var words = new long[4];
+        words[b >>> 6] = 1L << b;
+        return new ByteSet(words);
+    }
+
+    /**
+     * @param first Range start byte value, inclusive
+     * @param last  Range end byte value, inclusive
+     */
+    public static ByteSet range(int first, int last) {
+        checkByte(first);
+        checkByte(last);
+        if (first > last) {
+            throw new IllegalArgumentException("first: " + first + " > last: " + last);
+        }
+        final var words = new long[4];
+        for (int i = 0; i < 4; i++) {
+            final var from = Math.max(first, 64 * i);
+            final var to = Math.min(last, 64 * i + 63);
+            if (from <= to) {
+                // Bits from..to of the word
+                words[i] = (-1L >>> (63 - (to - from))) << from;
+            }
+        }
+        return new ByteSet(words);
+    }
+
+    private static void checkByte(int b) {
+        if (b < 0 || b > 255) {
+            throw new IllegalArgumentException("Byte value out of range: " + b);
+        }
+    }
+
+    /**
+     * @param b Byte value, only its low 8 bits are used: {@code 256 + b} and a negative signed byte {@code b - 256}
+     *          stand for {@code b} as well
+     */
+    public boolean contains(int b) {
+        final var value = b & 0xFF;
+        return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    public boolean contains(byte b) {
+        return contains(Byte.toUnsignedInt(b));
+    }
+
+    /**
+     * @return Bits 64 * index .. 64 * index + 63 of the mask
+     */
+    public long word(int index) {
+        return words[index];
+    }
+
+    public boolean isEmpty() {
+        return (words[0] | words[1] | words[2] | words[3]) == 0;
+    }
+
+    public int size() {
+        return Long.bitCount(words[0]) + Long.bitCount(words[1]) + Long.bitCount(words[2]) + Long.bitCount(words[3]);
+    }
+
+    public ByteSet union(ByteSet other) {
+        final var result = new long[4];
+        for (int i = 0; i < 4; i++) {
+            result[i] = words[i] | other.words[i];
+        }
+        return new ByteSet(result);
+    }
+
+    public ByteSet intersection(ByteSet other) {
+        final var result = new long[4];
+        for (int i = 0; i < 4; i++) {
+            result[i] = words[i] & other.words[i];
+        }
+        return new ByteSet(result);
+    }
+
+    public ByteSet complement() {
+        final var result = new long[4];
+        for (int i = 0; i < 4; i++) {
+            result[i] = ~words[i];
+        }
+        return new ByteSet(result);
+    }
+
+    /**
+     * @return Pairs of (first byte, last byte) of maximal ranges contained in the set, in ascending order
+     */
+    public int[] ranges() {
+        final var result = new int[256];
+        int n = 0;
+        int b = 0;
+        while (b < 256) {
+            if (!contains(b)) {
+                b++;
+                continue;
+            }
+            var end = b;
+            while (end + 1 < 256 && contains(end + 1)) {
+                end++;
+            }
+            result[n++] = b;
+            result[n++] = end;
+            b = end + 1;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ByteSet that && Arrays.equals(words, that.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        final var sb = new StringBuilder("[");
+        final var ranges = ranges();
+        for (int i = 0; i < ranges.length; i += 2) {
+            sb.append(Utils.toRegexString((byte) ranges[i]));
+            if (ranges[i + 1] != ranges[i]) {
+                sb.append('-').append(Utils.toRegexString((byte) ranges[i + 1]));
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+}
@@ -11,7 +11,26 @@ import java.util.List;
  * A regular expression pattern to match a single character of byte input.
  */
 public sealed abstract class RegexCharacter {
-    public abstract boolean matches(byte b);
+    private ByteSet byteSet;
+
+    public final boolean matches(byte b) {
+        return byteSet().contains(b);
+    }
+
+    /**
+     * @return All bytes matched by this character, computed once
+     */
+    public final ByteSet byteSet() {
+        // Racy but idempotent, ByteSet is immutable
+        var result = byteSet;
+        if (result == null) {
+            result = toByteSet();
+            byteSet = result;
+        }
+        return result;
+    }
+
+    abstract ByteSet toByteSet();
 
     public abstract <R> R accept(RegexCharacterVisitor<R> visitor);
 
@@ -39,8 +58,8 @@ public sealed abstract class RegexCharacter {
         }
 
         @Override
-        public boolean matches(byte b) {
-            return b == value;
+        ByteSet toByteSet() {
+            return ByteSet.of(Byte.toUnsignedInt(value));
         }
 
         @Override
@@ -97,8 +116,8 @@ public sealed abstract class RegexCharacter {
         }
 
         @Override
-        public boolean matches(byte b) {
-            return Byte.compareUnsigned(start, b) <= 0 && Byte.compareUnsigned(b, end) <= 0;
+        ByteSet toByteSet() {
+            return ByteSet.range(Byte.toUnsignedInt(start), Byte.toUnsignedInt(end));
         }
 
         @Override
@@ -138,13 +157,12 @@ public sealed abstract class RegexCharacter {
         }
 
         @Override
-        public boolean matches(byte b) {
+        ByteSet toByteSet() {
+            var result = ByteSet.EMPTY;
             for (final var character : characters) {
-                if (character.matches(b)) {
-                    return true;
-                }
+                result = result.union(character.byteSet());
             }
-            return false;
+            return result;
         }
 
         @Override
@@ -209,8 +227,8 @@ public sealed abstract class RegexCharacter {
         }
 
         @Override
-        public boolean matches(byte b) {
-            return !argument.matches(b);
+        ByteSet toByteSet() {
+            return argument.byteSet().complement();
         }
 
         @Override
@@ -264,8 +282,8 @@ public sealed abstract class RegexCharacter {
         }
 
         @Override
-        public boolean matches(byte b) {
-            return character.matches(b);
+        ByteSet toByteSet() {
+            return character.byteSet();
         }
 
         @Override
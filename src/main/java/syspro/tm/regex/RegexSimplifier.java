@@ -0,0 +1,225 @@
+package syspro.tm.regex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Rewrites a {@link Regex} into an equivalent smaller one: flattens nested concatenations and alternations,
+ * collapses nested quantifiers, merges single-character options into one {@link RegexCharacter.Union}
+ * and factors common prefixes out of alternations.
+ */
+public final class RegexSimplifier implements RegexVisitor<Regex> {
+    private static final RegexSimplifier INSTANCE = new RegexSimplifier();
+
+    private RegexSimplifier() {
+    }
+
+    public static Regex simplify(Regex regex) {
+        if (regex == null) {
+            throw new IllegalArgumentException("Regex should be non-null");
+        }
+
+        return regex.accept(INSTANCE);
+    }
+
+    @Override
+    public Regex visitSingleCharacter(Regex.SingleCharacter node) {
+        return node;
+    }
+
+    @Override
+    public Regex visitConcatenation(Regex.Concatenation node) {
+        final var parts = new ArrayList<Regex>();
+        for (final var part : node) {
+            addConcatenated(parts, part.accept(this));
+        }
+        return concatenation(parts);
+    }
+
+    @Override
+    public Regex visitAlternation(Regex.Alternation node) {
+        final var options = new ArrayList<Regex>();
+        for (final var option : node) {
+            options.add(option.accept(this));
+        }
+        return alternation(options);
+    }
+
+    @Override
+    public Regex visitRepetition(Regex.Repetition node) {
+        return repetition(node.argument.accept(this), node.min == null ? 0 : node.min, node.max);
+    }
+
+    private static boolean isEmpty(Regex regex) {
+        return regex instanceof Regex.Concatenation concatenation && concatenation.size() == 0;
+    }
+
+    private static void addConcatenated(List<Regex> parts, Regex part) {
+        if (part instanceof Regex.Concatenation concatenation) {
+            for (final var nested : concatenation) {
+                parts.add(nested);
+            }
+        } else {
+            parts.add(part);
+        }
+    }
+
+    private static Regex concatenation(List<Regex> parts) {
+        return parts.size() == 1 ? parts.getFirst() : new Regex.Concatenation(parts.toArray(Regex[]::new));
+    }
+
+    /**
+     * @param options Already simplified options
+     */
+    private static Regex alternation(List<Regex> options) {
+        final var flattened = new LinkedHashSet<Regex>();
+        for (final var option : options) {
+            if (option instanceof Regex.Alternation alternation) {
+                for (final var nested : alternation) {
+                    flattened.add(nested);
+                }
+            } else {
+                flattened.add(option);
+            }
+        }
+
+        final var merged = new ArrayList<Regex>();
+        final var characters = new ArrayList<RegexCharacter>();
+        int charactersIndex = -1;
+        boolean nullable = false;
+        for (final var option : flattened) {
+            if (option instanceof Regex.SingleCharacter single) {
+                if (charactersIndex < 0) {
+                    charactersIndex = merged.size();
+                    merged.add(option);
+                }
+                characters.add(single.character);
+            } else if (isEmpty(option)) {
+                nullable = true;
+            } else {
+                merged.add(option);
+            }
+        }
+        if (characters.size() > 1) {
+            merged.set(charactersIndex, new Regex.SingleCharacter(new RegexCharacter.Union(characters.toArray(RegexCharacter[]::new))));
+        }
+
+        final var factored = factorPrefixes(merged);
+        if (factored.isEmpty()) {
+            return new Regex.Concatenation();
+        }
+        final var result = factored.size() == 1 ? factored.getFirst() : new Regex.Alternation(factored.toArray(Regex[]::new));
+        // x| = x?
+        return nullable ? repetition(result, 0, 1) : result;
+    }
+
+    /**
+     * {@code ab|ac|d} = {@code a(b|c)|d}
+     */
+    private static List<Regex> factorPrefixes(List<Regex> options) {
+        final var groups = new LinkedHashMap<Regex, List<Regex>>();
+        for (final var option : options) {
+            groups.computeIfAbsent(head(option), _ -> new ArrayList<>()).add(option);
+        }
+        if (groups.size() == options.size()) {
+            return options;
+        }
+
+        final var result = new ArrayList<Regex>();
+        for (final var group : groups.entrySet()) {
+            final var members = group.getValue();
+            if (members.size() == 1) {
+                result.add(members.getFirst());
+                continue;
+            }
+            final var tails = new ArrayList<Regex>();
+            for (final var member : members) {
+                tails.add(tail(member));
+            }
+            final var parts = new ArrayList<Regex>();
+            parts.add(group.getKey());
+            addConcatenated(parts, alternation(tails));
+            result.add(concatenation(parts));
+        }
+        return result;
+    }
+
+    private static Regex head(Regex option) {
+        return option instanceof Regex.Concatenation concatenation ? concatenation.get(0) : option;
+    }
+
+    private static Regex tail(Regex option) {
+        if (!(option instanceof Regex.Concatenation concatenation)) {
+            return new Regex.Concatenation();
+        }
+        final var parts = new ArrayList<Regex>();
+        for (int i = 1; i < concatenation.size(); i++) {
+            parts.add(concatenation.get(i));
+        }
+        return parts.isEmpty() ? new Regex.Concatenation() : concatenation(parts);
+    }
+
+    /**
+     * @param max {@code null} if unbounded
+     */
+    private static Regex repetition(Regex argument, int min, Integer max) {
+        if (isEmpty(argument)) {
+            return argument;
+        }
+        if (min == 1 && max != null && max == 1) {
+            return argument;
+        }
+        if (argument instanceof Regex.Repetition inner) {
+            final var x = inner.argument;
+            final int innerMin = inner.min == null ? 0 : inner.min;
+            // (x*){c,d} = x*
+            if (innerMin == 0 && inner.max == null) {
+                return inner;
+            }
+            // (x{a,b}){c,} = x{ac,} for a <= 1
+            if (innerMin <= 1 && max == null) {
+                return repetition(x, innerMin * min, null);
+            }
+            // (x{a,b})? = x{0,b} for a <= 1
+            if (min == 0 && max != null && max == 1 && innerMin <= 1) {
+                return repetition(x, 0, inner.max);
+            }
+            // (x?){c,d} = x{0,d}
+            if (innerMin == 0 && inner.max != null && inner.max == 1) {
+                return repetition(x, 0, max);
+            }
+            // (x+){c,d} = x{c,}
+            if (innerMin == 1 && inner.max == null) {
+                return repetition(x, min, null);
+            }
+            // (x{a}){c} = x{ac}
+            if (inner.max != null && innerMin == inner.max && max != null && min == max) {
+                final var product = (long) innerMin * min;
+                if (product <= Integer.MAX_VALUE) {
+                    return repetition(x, (int) product, (int) product);
+                }
+            }
+        }
+        if (max == null && min <= 1 && argument instanceof Regex.Alternation alternation) {
+            // (x*|y)* = (x|y)*
+            final var options = new ArrayList<Regex>();
+            boolean changed = false;
+            boolean nullable = false;
+            for (final var option : alternation) {
+                if (option instanceof Regex.Repetition repetition && (repetition.min == null || repetition.min <= 1)) {
+                    options.add(repetition.argument);
+                    changed = true;
+                    nullable |= repetition.min == null || repetition.min == 0;
+                } else {
+                    options.add(option);
+                }
+            }
+            if (changed && (min == 0 || nullable)) {
+                return repetition(alternation(options), 0, null);
+            }
+        }
+        return new Regex.Repetition(argument, min, max);
+    }
+}
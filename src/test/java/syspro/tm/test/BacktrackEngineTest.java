@@ -0,0 +1,24 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.Utils;
+import syspro.tm.engine.BacktrackRegexEngine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BacktrackEngineTest {
+    private final BacktrackRegexEngine engine = new BacktrackRegexEngine();
+
+    private boolean matches(String regex, String input) {
+        return engine.matches(Utils.toBytes(regex), Utils.toBytes(input));
+    }
+
+    @Test
+    public void pathologicalTest() {
+        assertTrue(matches("(a?){20}a{20}", "a".repeat(20)));
+        assertFalse(matches("(a+)+!", "a".repeat(1_000)));
+        // Too long for the visited bitset: handled by the linear engine
+        assertFalse(matches("(a+)+!", "a".repeat(1_000_000)));
+        assertTrue(matches("(a+)+!", "a".repeat(1_000_000) + '!'));
+    }
+}
@@ -0,0 +1,34 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.regex.ByteClasses;
+import syspro.tm.regex.Regex;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteClassesTest {
+    @Test
+    public void partitionTest() {
+        assertEquals(1, ByteClasses.of(Regex.parse(".*")).count());
+        assertEquals(2, ByteClasses.of(Regex.parse("a*")).count());
+        // a, b and everything else
+        assertEquals(3, ByteClasses.of(Regex.parse("(ab)*a|b")).count());
+        // Lowercase letters except "ing", each of "ing", the rest of \w, and everything else
+        final var classes = ByteClasses.of(Regex.parse(".*[a-z]+ing\\w"));
+        assertEquals(6, classes.count());
+        assertEquals(classes.classOf('a'), classes.classOf('z'));
+        assertEquals(classes.classOf('A'), classes.classOf('_'));
+        assertNotEquals(classes.classOf('i'), classes.classOf('n'));
+        assertNotEquals(classes.classOf('a'), classes.classOf('A'));
+        assertEquals(classes.classOf('0'), classes.classOf(0xFF));
+    }
+
+    @Test
+    public void representativeTest() {
+        final var classes = ByteClasses.of(Regex.parse("[b-y]"));
+        assertEquals(2, classes.count());
+        assertEquals(0, classes.representative(classes.classOf('z')));
+        assertEquals('b', classes.representative(classes.classOf('x')));
+        assertThrows(IllegalArgumentException.class, () -> classes.representative(2));
+    }
+}
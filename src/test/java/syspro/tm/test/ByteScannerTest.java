@@ -0,0 +1,75 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.Utils;
+import syspro.tm.engine.ByteScanner;
+import syspro.tm.engine.FullDfaRegexEngine;
+import syspro.tm.regex.ByteSet;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteScannerTest {
+    @Test
+    public void scanTest() {
+        final var random = new Random(42);
+        final var sets = new ByteSet[]{
+                ByteSet.EMPTY,
+                ByteSet.ALL,
+                ByteSet.of('H'),
+                ByteSet.of(0x80).union(ByteSet.of(0xFF)),
+                ByteSet.range('a', 'z').union(ByteSet.range('A', 'Z')).complement(),
+                randomSet(random, 16),
+                // More than 8 distinct rows of low nibbles
+                randomSet(random, 100),
+        };
+        for (final var set : sets) {
+            final var scanner = ByteScanner.of(set);
+            final var scalar = ByteScanner.scalar(set);
+            for (int length = 0; length < 200; length += 7) {
+                final var input = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    // Mostly bytes outside the set, so that the runs are long
+                    input[i] = (byte) random.nextInt(256);
+                    while (set.contains(input[i]) && random.nextInt(8) != 0 && set.size() != 256) {
+                        input[i] = (byte) random.nextInt(256);
+                    }
+                }
+                for (int from = 0; from <= length; from++) {
+                    var expected = from;
+                    while (expected < length && !set.contains(input[expected])) {
+                        expected++;
+                    }
+                    assertEquals(expected, scanner.indexOf(input, from, length));
+                    assertEquals(expected, scalar.indexOf(input, from, length));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dfaTest() {
+        final var engine = new FullDfaRegexEngine();
+        final var input = new byte[1000];
+        Arrays.fill(input, (byte) 'x');
+        input[0] = 'H';
+        input[999] = 's';
+        assertTrue(engine.matches(Utils.toBytes("[^@]*"), input));
+        assertFalse(engine.matches(Utils.toBytes(".*Holmes.*"), input));
+        input[700] = '@';
+        assertFalse(engine.matches(Utils.toBytes("[^@]*"), input));
+        System.arraycopy(Utils.toBytes("Holmes"), 0, input, 994, 6);
+        assertTrue(engine.matches(Utils.toBytes(".*Holmes"), input));
+        assertTrue(engine.matches(Utils.toBytes("H[^@]*@[^@]*s"), input));
+    }
+
+    private static ByteSet randomSet(Random random, int size) {
+        var set = ByteSet.EMPTY;
+        for (int i = 0; i < size; i++) {
+            set = set.union(ByteSet.of(random.nextInt(256)));
+        }
+        return set;
+    }
+}
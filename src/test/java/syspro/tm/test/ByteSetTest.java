@@ -0,0 +1,50 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.regex.ByteSet;
+import syspro.tm.regex.Regex;
+import syspro.tm.regex.RegexCharacter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteSetTest {
+    @Test
+    public void algebraTest() {
+        final var lower = ByteSet.range('a', 'z');
+        final var vowels = ByteSet.of('a').union(ByteSet.of('e')).union(ByteSet.of('i')).union(ByteSet.of('o')).union(ByteSet.of('u'));
+        assertEquals(26, lower.size());
+        assertEquals(vowels, lower.intersection(vowels));
+        assertEquals(ByteSet.ALL, lower.union(lower.complement()));
+        assertTrue(lower.intersection(lower.complement()).isEmpty());
+        assertTrue(ByteSet.range(0, 255).contains((byte) 0xFF));
+        // Only the low 8 bits of an int value count
+        final var high = ByteSet.of(0xC8);
+        assertTrue(high.contains(0xC8));
+        assertTrue(high.contains(0xC8 - 256));
+        assertTrue(high.contains(0xC8 + 256));
+        assertFalse(high.contains(0x08));
+        assertFalse(high.contains(0x48));
+        assertEquals(ByteSet.ALL, ByteSet.range(0, 255));
+        assertEquals(ByteSet.range(60, 70), ByteSet.range(60, 63).union(ByteSet.range(64, 70)));
+        assertThrows(IllegalArgumentException.class, () -> ByteSet.of(256));
+        assertThrows(IllegalArgumentException.class, () -> ByteSet.range(2, 1));
+    }
+
+    @Test
+    public void rangesTest() {
+        final var set = ByteSet.range('0', '9').union(ByteSet.of('_')).union(ByteSet.range(200, 255));
+        assertArrayEquals(new int[]{'0', '9', '_', '_', 200, 255}, set.ranges());
+        assertArrayEquals(new int[0], ByteSet.EMPTY.ranges());
+    }
+
+    @Test
+    public void regexCharacterTest() {
+        final var word = RegexCharacter.PredefinedCharacterClass.WORD.byteSet();
+        assertEquals(ByteSet.range('a', 'z').union(ByteSet.range('A', 'Z')).union(ByteSet.of('_')), word);
+        assertEquals(word.complement(), RegexCharacter.PredefinedCharacterClass.NON_WORD.byteSet());
+        final var parsed = (Regex.SingleCharacter) Regex.parse("[^a-z_A-Z]");
+        assertEquals(word.complement(), parsed.character.byteSet());
+        assertTrue(parsed.character.matches((byte) '0'));
+        assertFalse(parsed.character.matches((byte) '_'));
+    }
+}
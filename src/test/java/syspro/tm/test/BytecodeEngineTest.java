@@ -0,0 +1,47 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.RecordBatch;
+import syspro.tm.Utils;
+import syspro.tm.engine.BytecodeRegexEngine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BytecodeEngineTest {
+    private final BytecodeRegexEngine engine = new BytecodeRegexEngine();
+
+    @Test
+    public void methodSizeLimitTest() {
+        // a{k} has k + 1 states and k byte ranges: 46 * k + 64 bytes of code with both tableswitches.
+        // 172 repetitions need 7976 bytes, 173 need 8022, over the 8000 bytes HotSpot still compiles
+        final var underLimit = engine.compile(Utils.toBytes("a{172}"));
+        assertEquals("bytecode", underLimit.tierHistory());
+        assertTrue(underLimit.matches(Utils.toBytes("a".repeat(172))));
+        assertFalse(underLimit.matches(Utils.toBytes("a".repeat(171))));
+        assertFalse(underLimit.matches(Utils.toBytes("a".repeat(173))));
+
+        final var overLimit = engine.compile(Utils.toBytes("a{173}"));
+        assertEquals("table-driven DFA", overLimit.tierHistory());
+        assertTrue(overLimit.matches(Utils.toBytes("a".repeat(173))));
+        assertFalse(overLimit.matches(Utils.toBytes("a".repeat(172))));
+    }
+
+    @Test
+    public void stateLimitTest() {
+        // The DFA remembers the last 21 bytes, far more states than the table-driven DFA allows
+        final var compiled = engine.compile(Utils.toBytes(".*a.{20}"));
+        assertEquals("lazy DFA", compiled.tierHistory());
+        assertTrue(compiled.matches(Utils.toBytes("xa" + "b".repeat(20))));
+        assertFalse(compiled.matches(Utils.toBytes("xa" + "b".repeat(21))));
+    }
+
+    @Test
+    public void rangeTest() {
+        final var compiled = engine.compile(Utils.toBytes("ab+"));
+        final var input = Utils.toBytes("xabbx");
+        // Batch records are matched in place by the generated method
+        assertTrue(compiled.matchBatch(new RecordBatch(input, new int[]{1, 4})).get(0));
+        assertFalse(compiled.matchBatch(new RecordBatch(input, new int[]{0, 4})).get(0));
+        assertFalse(compiled.matchBatch(new RecordBatch(input, new int[]{1, 5})).get(0));
+    }
+}
@@ -0,0 +1,114 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.CompiledRegexCache;
+import syspro.tm.Utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledRegexCacheTest {
+    @Test
+    public void contentKeyTest() {
+        final var compilations = new AtomicInteger();
+        final var cache = new CompiledRegexCache<>(16, regex -> compilations.incrementAndGet());
+        final var regex = Utils.toBytes("a+b");
+        assertEquals(1, cache.get(regex));
+        assertEquals(1, cache.get(regex.clone()));
+        assertEquals(1, cache.get(Utils.toBytes("a+b")));
+        assertEquals(2, cache.get(Utils.toBytes("a+c")));
+        assertEquals(2, compilations.get());
+        assertEquals(2, cache.hitCount());
+        assertEquals(2, cache.missCount());
+    }
+
+    @Test
+    public void getIfPresentTest() {
+        final var cache = new CompiledRegexCache<>(16, Utils::toJavaString);
+        assertNull(cache.getIfPresent(Utils.toBytes("a+b")));
+        assertEquals(0, cache.size());
+        assertEquals("a+b", cache.get(Utils.toBytes("a+b")));
+        assertEquals("a+b", cache.getIfPresent(Utils.toBytes("a+b")));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void callerMutationTest() {
+        final var cache = new CompiledRegexCache<>(16, Utils::toJavaString);
+        final var regex = Utils.toBytes("abc");
+        assertEquals("abc", cache.get(regex));
+        regex[0] = 'x';
+        assertEquals("abc", cache.get(Utils.toBytes("abc")));
+        assertEquals("xbc", cache.get(regex));
+    }
+
+    @Test
+    public void boundedTest() {
+        final var cache = new CompiledRegexCache<>(100, Utils::toJavaString);
+        for (int i = 0; i < 10_000; i++) {
+            cache.get(Utils.toBytes("a{" + i + "}"));
+        }
+        assertTrue(cache.size() <= 100);
+        assertEquals(10_000 - cache.size(), cache.evictionCount());
+    }
+
+    @Test
+    public void frequencyAdmissionTest() {
+        final var cache = new CompiledRegexCache<>(100, Utils::toJavaString);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.get(Utils.toBytes("hot" + i));
+            }
+        }
+        // A scan of one-off regexes does not flush the frequently used ones
+        for (int i = 0; i < 1_000; i++) {
+            cache.get(Utils.toBytes("cold" + i));
+        }
+        final var misses = cache.missCount();
+        for (int i = 0; i < 50; i++) {
+            cache.get(Utils.toBytes("hot" + i));
+        }
+        assertEquals(misses, cache.missCount());
+    }
+
+    @Test
+    public void concurrentTest() {
+        final var cache = new CompiledRegexCache<>(64, Utils::toJavaString);
+        IntStream.range(0, 200_000).parallel().forEach(i -> {
+            final var regex = "r" + (i * 7919 % 100);
+            assertEquals(regex, cache.get(Utils.toBytes(regex)));
+        });
+        assertTrue(cache.size() <= 64 + Runtime.getRuntime().availableProcessors());
+        assertEquals(200_000, cache.hitCount() + cache.missCount());
+    }
+
+    @Test
+    public void concurrentClearTest() throws InterruptedException {
+        final var cache = new CompiledRegexCache<>(16, Utils::toJavaString);
+        final var threads = new Thread[Math.max(2, Runtime.getRuntime().availableProcessors())];
+        for (int t = 0; t < threads.length; t++) {
+            final var first = t == 0;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 200_000; i++) {
+                    if (first && i % 16 == 0) {
+                        cache.clear();
+                    } else {
+                        cache.get(Utils.toBytes("r" + (i * 7919 % 64)));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (final var thread : threads) {
+            thread.join();
+        }
+        // Entries inserted while the cache was cleared are either cached or gone, none of them takes up room
+        for (int i = 0; i < 2 * cache.maximumSize(); i++) {
+            cache.get(Utils.toBytes("new" + i));
+        }
+        assertEquals(cache.maximumSize(), cache.size());
+    }
+}
@@ -1,23 +1,57 @@
 package syspro.tm.test;
 
+import org.junit.jupiter.api.Named;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import syspro.tm.CompiledRegex;
 import syspro.tm.Configuration;
+import syspro.tm.DefaultTestCases;
+import syspro.tm.RecordBatch;
+import syspro.tm.RegexEngine;
 import syspro.tm.TestData;
 import syspro.tm.Utils;
+import syspro.tm.engine.BacktrackRegexEngine;
+import syspro.tm.engine.BytecodeRegexEngine;
+import syspro.tm.engine.FullDfaRegexEngine;
+import syspro.tm.engine.GlushkovRegexEngine;
+import syspro.tm.engine.LazyDfaRegexEngine;
+import syspro.tm.engine.NativeRegexEngine;
+import syspro.tm.engine.PikeVmRegexEngine;
+import syspro.tm.engine.TieredRegexEngine;
 import syspro.tm.regex.Regex;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class EngineTest {
+    // Shared by all tests, so that the engines keep their compiled regexes like they do in benchmarks
+    private static final List<Named<RegexEngine>> ENGINES = List.of(
+            Named.of("JavaCaching", new JavaCachingRegexEngine()),
+            Named.of("PikeVm", new PikeVmRegexEngine()),
+            Named.of("LazyDfa", new LazyDfaRegexEngine()),
+            Named.of("FullDfa", new FullDfaRegexEngine()),
+            Named.of("Glushkov", new GlushkovRegexEngine()),
+            Named.of("Bytecode", new BytecodeRegexEngine()),
+            Named.of("Native", new NativeRegexEngine()),
+            Named.of("Backtrack", new BacktrackRegexEngine()),
+            // Low thresholds, so that the configured tests run on every tier
+            Named.of("Tiered", new TieredRegexEngine(2, 4, 1 << 20, null))
+    );
+
     private final JavaCachingRegexEngine myRegexEngine = new JavaCachingRegexEngine();
 
-    public static Stream<TestData> singleConfiguredTest() {
-        return Configuration.testData().stream().filter(data -> data.slidingWindowSize == null);
+    public static Stream<Named<RegexEngine>> engines() {
+        return ENGINES.stream();
+    }
+
+    public static Stream<Arguments> singleConfiguredTest() {
+        final var testData = Configuration.testData().stream().filter(data -> data.slidingWindowSize == null).toList();
+        return engines().flatMap(engine -> testData.stream().map(data -> Arguments.of(engine, data)));
     }
 
     public static Stream<byte[]> singleConfiguredRegex() {
@@ -34,10 +68,106 @@ public class EngineTest {
         assertFalse(matches("a[bB][0-9]\\d\\w?", "aB42-"));
     }
 
+    @Test
+    public void compileTest() {
+        final var regex = Utils.toBytes("a[bB][0-9]\\d\\w?.\\s");
+        final var bridged = new JavaRegexEngine().compile(regex);
+        final var compiled = myRegexEngine.compile(regex);
+        // Compiled regexes do not observe later changes of the caller's array
+        regex[0] = 'x';
+        for (final var regexCompiled : new CompiledRegex[]{bridged, compiled}) {
+            assertTrue(regexCompiled.matches(Utils.toBytes("aB42_\n\f")));
+            assertFalse(regexCompiled.matches(Utils.toBytes("xB42_\n\f")));
+        }
+    }
+
+    @Test
+    public void batchTest() {
+        final var data = Utils.toBytes("abxab");
+        assertThrows(IllegalArgumentException.class, () -> new RecordBatch(data, new int[0]));
+        assertThrows(IllegalArgumentException.class, () -> new RecordBatch(data, new int[]{0, 3, 2}));
+        assertThrows(IllegalArgumentException.class, () -> new RecordBatch(data, new int[]{0, 6}));
+
+        final var batch = new RecordBatch(data, new int[]{0, 2, 3, 5, 5});
+        final var compiled = myRegexEngine.compile(Utils.toBytes("ab"));
+        // Stale bits of the bitmap are cleared
+        final var results = new long[]{-1};
+        assertEquals(2, compiled.matchBatch(batch, results));
+        assertEquals(0b0101, results[0]);
+        assertEquals(List.of(0, 2), compiled.matchBatch(batch).stream().boxed().toList());
+        assertThrows(IllegalArgumentException.class, () -> compiled.matchBatch(batch, new long[0]));
+
+        // The shared offsets can be changed after construction, consumers check them again
+        batch.offsets[1] = 6;
+        assertThrows(IllegalArgumentException.class, () -> RecordBatch.checkOffsets(batch.data, batch.offsets));
+        batch.offsets[1] = 2;
+        RecordBatch.checkOffsets(batch.data, batch.offsets);
+        assertEquals(1, RecordBatch.checkBitmap(new long[1], 64));
+        assertThrows(IllegalArgumentException.class, () -> RecordBatch.checkBitmap(new long[1], 65));
+    }
+
+    @Test
+    public void windowsTest() {
+        final var input = Utils.toBytes("abxbabb");
+        assertThrows(IllegalArgumentException.class, () -> RecordBatch.windows(input, 0));
+        assertEquals(4, RecordBatch.windowCount(input.length, 2));
+        assertEquals(0, RecordBatch.windows(new byte[0], 2).size());
+
+        final var compiled = myRegexEngine.compile(Utils.toBytes("ab"));
+        final var results = new long[1];
+        // The last window is a single byte
+        assertEquals(2, compiled.matchWindows(input, 2, results));
+        assertEquals(0b0101, results[0]);
+    }
+
     @ParameterizedTest
     @MethodSource
-    public void singleConfiguredTest(TestData data) {
-        assertEquals(data.expected, myRegexEngine.matches(data.regex, data.input));
+    public void singleConfiguredTest(RegexEngine engine, TestData data) {
+        assertEquals(data.expected, data.search ? engine.find(data.regex, data.input) : engine.matches(data.regex, data.input));
+    }
+
+    @ParameterizedTest
+    @MethodSource("singleConfiguredTest")
+    public void singleConfiguredCompiledTest(RegexEngine engine, TestData data) {
+        final var compiled = data.search ? engine.compileSearch(data.regex) : engine.compile(data.regex);
+        assertEquals(data.expected, compiled.matches(data.input));
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    public void engineBatchTest(RegexEngine engine) {
+        final var javaEngine = new JavaRegexEngine();
+        final var sherlock = DefaultTestCases.loadSherlockBytes();
+        // Records of varying length, including empty ones, that do not start at the beginning of the array
+        final var offsets = new int[2001];
+        offsets[0] = 7;
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] = offsets[i - 1] + i % 97;
+        }
+        final var batch = new RecordBatch(sherlock, offsets);
+        for (final var regex : new String[]{".*Holmes.*", ".*[a-zA-Z]+ing.*", "[^x]*", ".*(Holmes.{0,25}Watson|Watson.{0,25}Holmes).*"}) {
+            final var expected = javaEngine.compile(Utils.toBytes(regex)).matchBatch(batch);
+            assertEquals(expected, engine.compile(Utils.toBytes(regex)).matchBatch(batch));
+        }
+        for (final var regex : new String[]{"Holmes", "[a-zA-Z]+ing\\s", "Sherlock\\s+Holmes"}) {
+            final var expected = javaEngine.compileSearch(Utils.toBytes(regex)).matchBatch(batch);
+            assertEquals(expected, engine.compileSearch(Utils.toBytes(regex)).matchBatch(batch));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    public void engineWindowsTest(RegexEngine engine) {
+        final var javaEngine = new JavaRegexEngine();
+        // The last window is shorter than the others
+        final var sherlock = Arrays.copyOf(DefaultTestCases.loadSherlockBytes(), 100_017);
+        for (final var regex : new String[]{".*Holmes.*", ".*[a-zA-Z]+ing.*", "[^x]*"}) {
+            final var expected = new long[RecordBatch.bitmapLength(RecordBatch.windowCount(sherlock.length, 40))];
+            final var actual = new long[expected.length];
+            final var count = javaEngine.compile(Utils.toBytes(regex)).matchWindows(sherlock, 40, expected);
+            assertEquals(count, engine.compile(Utils.toBytes(regex)).matchWindows(sherlock, 40, actual));
+            assertArrayEquals(expected, actual);
+        }
     }
 
     @ParameterizedTest
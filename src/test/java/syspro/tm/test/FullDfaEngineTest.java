@@ -0,0 +1,20 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.Utils;
+import syspro.tm.engine.FullDfaRegexEngine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FullDfaEngineTest {
+    private final FullDfaRegexEngine engine = new FullDfaRegexEngine();
+
+    @Test
+    public void stateLimitTest() {
+        // (a|b)*a(a|b){12} needs 2^13 DFA states, the engine has to fall back to the lazy DFA
+        final var limitedEngine = new FullDfaRegexEngine(100);
+        final var regex = Utils.toBytes("(a|b)*a(a|b){12}");
+        assertTrue(limitedEngine.matches(regex, Utils.toBytes("bbba" + "b".repeat(12))));
+        assertFalse(limitedEngine.matches(regex, Utils.toBytes("bbbb" + "a".repeat(12))));
+    }
+}
@@ -0,0 +1,78 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.DefaultTestCases;
+import syspro.tm.StreamMatcher;
+import syspro.tm.Utils;
+import syspro.tm.engine.GlushkovRegexEngine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GlushkovEngineTest {
+    private final GlushkovRegexEngine engine = new GlushkovRegexEngine();
+
+    private boolean matches(String regex, String input) {
+        return engine.matches(Utils.toBytes(regex), Utils.toBytes(input));
+    }
+
+    @Test
+    public void positionCountTest() {
+        // 64 positions: single word
+        assertTrue(matches("a{32}b{32}", "a".repeat(32) + "b".repeat(32)));
+        assertFalse(matches("a{32}b{32}", "a".repeat(32) + "b".repeat(31)));
+        // 65 positions: multiple words
+        assertTrue(matches("a{33}b{32}", "a".repeat(33) + "b".repeat(32)));
+        assertFalse(matches("a{33}b{32}", "a".repeat(32) + "b".repeat(33)));
+        // Beyond the multi-word limit
+        assertTrue(matches("[ab]{0,5000}c", "ab".repeat(2000) + 'c'));
+        assertFalse(matches("[ab]{0,5000}c", "ab".repeat(2000)));
+    }
+
+    @Test
+    public void streamingTest() {
+        final var javaEngine = new JavaRegexEngine();
+        final var sherlock = DefaultTestCases.loadSherlockBytes();
+        // Single word and multiple words
+        for (final var pattern : new String[]{".*[a-z]+ing Holmes.*", ".*(Holmes.{0,25}Watson|Watson.{0,25}Holmes).*"}) {
+            final var regex = Utils.toBytes(pattern);
+            final var matcher = engine.compile(regex).streamMatcher();
+            final var buffer = ByteBuffer.wrap(sherlock);
+            for (int i = 0; i < 100_000; i += 60) {
+                var status = StreamMatcher.Status.UNDECIDED;
+                for (int offset = i; offset < i + 60; offset += 7) {
+                    buffer.limit(Math.min(offset + 7, i + 60)).position(offset);
+                    status = matcher.feed(buffer);
+                    assertEquals(buffer.limit(), buffer.position());
+                }
+                final var expected = javaEngine.matches(regex, Arrays.copyOfRange(sherlock, i, i + 60));
+                assertEquals(expected, matcher.finish(), pattern);
+                assertNotEquals(expected ? StreamMatcher.Status.NO_MATCH : StreamMatcher.Status.MATCH, status);
+            }
+        }
+    }
+
+    @Test
+    public void streamingDeadTest() {
+        for (final var pattern : new String[]{"a{32}b{32}", "a{33}b{32}"}) {
+            final var matcher = engine.compile(Utils.toBytes(pattern)).streamMatcher();
+            // Nothing fed yet: the empty input
+            assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.allocate(0)));
+            assertFalse(matcher.finish());
+            assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes("a".repeat(32)))));
+            assertEquals(StreamMatcher.Status.NO_MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("ba"))));
+            assertEquals(StreamMatcher.Status.NO_MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("b"))));
+            assertFalse(matcher.finish());
+            final var input = pattern.startsWith("a{33}") ? "a".repeat(33) + "b".repeat(32) : "a".repeat(32) + "b".repeat(32);
+            assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes(input.substring(0, 40)))));
+            assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes(input.substring(40)))));
+            assertTrue(matcher.finish());
+        }
+        final var nullable = engine.compile(Utils.toBytes("(ab)*")).streamMatcher();
+        assertTrue(nullable.finish());
+        assertEquals(StreamMatcher.Status.NO_MATCH, nullable.feed(ByteBuffer.wrap(Utils.toBytes("b"))));
+        assertFalse(nullable.finish());
+    }
+}
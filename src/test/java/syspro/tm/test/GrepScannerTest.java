@@ -0,0 +1,74 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import syspro.tm.DefaultTestCases;
+import syspro.tm.GrepScanner;
+import syspro.tm.RegexEngine;
+import syspro.tm.Utils;
+import syspro.tm.engine.LazyDfaRegexEngine;
+import syspro.tm.engine.PikeVmRegexEngine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GrepScannerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void smallFileTest() throws IOException {
+        final var file = directory.resolve("small.txt");
+        Files.writeString(file, "abc\n\nxabcx\nab\nc\nabc");
+        final var result = GrepScanner.scan(new PikeVmRegexEngine().compileSearch(Utils.toBytes("abc")), file, true);
+        assertEquals(6, result.lines);
+        assertEquals(3, result.matchingLines);
+        assertArrayEquals(new long[]{0, 5, 16}, result.offsets);
+        assertEquals(Files.size(file), result.bytes);
+    }
+
+    @Test
+    public void emptyFileTest() throws IOException {
+        final var file = Files.createFile(directory.resolve("empty.txt"));
+        final var result = GrepScanner.scan(new PikeVmRegexEngine().compileSearch(Utils.toBytes("a*")), file, false);
+        assertEquals(0, result.lines);
+        assertEquals(0, result.matchingLines);
+        assertNull(result.offsets);
+    }
+
+    @Test
+    public void largeFileTest() throws IOException {
+        // Large enough to be split into ranges that are scanned in parallel
+        final var sherlock = DefaultTestCases.loadSherlockBytes();
+        final var content = new ByteArrayOutputStream();
+        for (int i = 0; i < 4; i++) {
+            content.write(sherlock);
+        }
+        final var file = directory.resolve("large.txt");
+        Files.write(file, content.toByteArray());
+
+        final var regex = "Holmes.{0,25}Watson|Watson.{0,25}Holmes";
+        final var pattern = Pattern.compile(regex, Pattern.DOTALL);
+        final var expected = new ArrayList<Long>();
+        final var text = Utils.toJavaString(content.toByteArray());
+        long lineStart = 0;
+        for (final var line : text.split("\n", -1)) {
+            if (pattern.matcher(line).find()) {
+                expected.add(lineStart);
+            }
+            lineStart += line.length() + 1;
+        }
+
+        for (final var engine : new RegexEngine[]{new LazyDfaRegexEngine(), new PikeVmRegexEngine(), new JavaRegexEngine()}) {
+            final var result = GrepScanner.scan(engine.compileSearch(Utils.toBytes(regex)), file, true);
+            assertEquals(expected.size(), result.matchingLines);
+            assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), result.offsets);
+        }
+    }
+}
@@ -1,23 +1,40 @@
 package syspro.tm.test;
 
+import syspro.tm.CompiledRegex;
+import syspro.tm.CompiledRegexCache;
 import syspro.tm.RegexEngine;
 import syspro.tm.Utils;
 
-import java.util.HashMap;
-import java.util.function.Function;
 import java.util.regex.Pattern;
 
-public final class JavaCachingRegexEngine implements RegexEngine, Function<byte[], Pattern> {
-    private static final HashMap<byte[], Pattern> regexCache = new HashMap<>();
+public final class JavaCachingRegexEngine implements RegexEngine {
+    private static final CompiledRegexCache<Pattern> regexCache = new CompiledRegexCache<>(1024, JavaCachingRegexEngine::compilePattern);
 
     @Override
     public boolean matches(byte[] regex, byte[] input) {
-        final var pattern = regexCache.computeIfAbsent(regex, this);
+        final var pattern = regexCache.get(regex);
         return pattern.matcher(Utils.toJavaString(input)).matches();
     }
 
     @Override
-    public Pattern apply(byte[] regex) {
+    public CompiledRegex compile(byte[] regex) {
+        final var pattern = compilePattern(regex.clone());
+        return input -> pattern.matcher(Utils.toJavaString(input)).matches();
+    }
+
+    @Override
+    public boolean find(byte[] regex, byte[] input) {
+        final var pattern = regexCache.get(regex);
+        return pattern.matcher(Utils.toJavaString(input)).find();
+    }
+
+    @Override
+    public CompiledRegex compileSearch(byte[] regex) {
+        final var pattern = compilePattern(regex.clone());
+        return input -> pattern.matcher(Utils.toJavaString(input)).find();
+    }
+
+    private static Pattern compilePattern(byte[] regex) {
         return Pattern.compile(Utils.toJavaString(regex), Pattern.DOTALL);
     }
 }
@@ -11,4 +11,10 @@ public final class JavaRegexEngine implements RegexEngine {
         final var pattern = Pattern.compile(Utils.toJavaString(regex), Pattern.DOTALL);
         return pattern.matcher(Utils.toJavaString(input)).matches();
     }
+
+    @Override
+    public boolean find(byte[] regex, byte[] input) {
+        final var pattern = Pattern.compile(Utils.toJavaString(regex), Pattern.DOTALL);
+        return pattern.matcher(Utils.toJavaString(input)).find();
+    }
 }
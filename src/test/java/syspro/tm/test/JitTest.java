@@ -6,6 +6,9 @@ import syspro.tm.jit.NativeCompilerRunner;
 import syspro.tm.jit.NativeLibraries;
 import syspro.tm.jit.NativeLibrary;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.ValueLayout;
+
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -53,5 +56,13 @@ public class JitTest {
         assertFalse(nativeLibrary.callMatches(new byte[]{2, 2, 5}));
         assertFalse(nativeLibrary.callMatches(new byte[]{}));
         assertFalse(nativeLibrary.callMatches(new byte[]{'A'}));
+        assertTrue(nativeLibrary.callMatches(new byte[]{9, 1, 2, 3, 9}, 1, 4));
+        // Long inputs are copied to the scratch segment instead of being passed by a critical downcall
+        final var longInput = new byte[(int) NativeLibrary.CRITICAL_INPUT_LIMIT + 1];
+        assertFalse(nativeLibrary.callMatches(longInput));
+        try (var arena = Arena.ofConfined()) {
+            assertTrue(nativeLibrary.callMatches(arena.allocateFrom(ValueLayout.JAVA_BYTE, (byte) 2, (byte) 2, (byte) 4)));
+            assertFalse(nativeLibrary.callMatches(arena.allocate(longInput.length)));
+        }
     }
 }
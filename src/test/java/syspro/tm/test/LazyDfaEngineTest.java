@@ -0,0 +1,112 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.DefaultTestCases;
+import syspro.tm.StreamMatcher;
+import syspro.tm.Utils;
+import syspro.tm.engine.LazyDfaRegexEngine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyDfaEngineTest {
+    private final LazyDfaRegexEngine engine = new LazyDfaRegexEngine();
+
+    @Test
+    public void tinyCacheTest() {
+        // Every search overflows the cache and falls back to NFA simulation
+        final var tinyEngine = new LazyDfaRegexEngine(1);
+        final var javaEngine = new JavaRegexEngine();
+        final var regex = Utils.toBytes(".*(Holmes.{0,25}Watson|Watson.{0,25}Holmes).*");
+        final var sherlock = DefaultTestCases.loadSherlockBytes();
+        for (int i = 0; i < 100_000; i += 40) {
+            final var window = Arrays.copyOfRange(sherlock, i, i + 40);
+            assertEquals(javaEngine.matches(regex, window), tinyEngine.matches(regex, window));
+        }
+    }
+
+    @Test
+    public void countingTest() {
+        final var javaEngine = new JavaRegexEngine();
+        final var regex = Utils.toBytes(".{0,30}[a-z]{7,30}[ ,.]{1,4}.{0,30}");
+        final var sherlock = DefaultTestCases.loadSherlockBytes();
+        for (int i = 0; i < 100_000; i += 60) {
+            final var window = Arrays.copyOfRange(sherlock, i, i + 60);
+            assertEquals(javaEngine.matches(regex, window), engine.matches(regex, window));
+        }
+    }
+
+    @Test
+    public void regexSetTest() {
+        final var javaEngine = new JavaRegexEngine();
+        final var regexes = new byte[][]{
+                Utils.toBytes(".*Sherlock Holmes.*"),
+                Utils.toBytes(".*(Holmes.{0,25}Watson|Watson.{0,25}Holmes).*"),
+                Utils.toBytes(".*[a-zA-Z]+ing.*"),
+                Utils.toBytes(".*\\s[a-zA-Z]{0,12}ing\\s.*"),
+                Utils.toBytes(".{0,30}[a-z]{7,30}[ ,.]{1,4}.{0,30}"),
+        };
+        final var sherlock = DefaultTestCases.loadSherlockBytes();
+        // The tiny cache makes every window fall back to NFA simulation
+        for (final var setEngine : new LazyDfaRegexEngine[]{engine, new LazyDfaRegexEngine(1)}) {
+            final var regexSet = setEngine.compileSet(regexes);
+            for (int i = 0; i < 100_000; i += 40) {
+                final var window = Arrays.copyOfRange(sherlock, i, i + 40);
+                final var actual = regexSet.matches(window);
+                for (int j = 0; j < regexes.length; j++) {
+                    assertEquals(javaEngine.matches(regexes[j], window), actual.get(j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void streamingTest() {
+        final var javaEngine = new JavaRegexEngine();
+        final var regex = Utils.toBytes(".*(Holmes.{0,25}Watson|Watson.{0,25}Holmes).*");
+        final var sherlock = DefaultTestCases.loadSherlockBytes();
+        // The tiny cache makes streams switch to NFA simulation between chunks
+        for (final var streamEngine : new LazyDfaRegexEngine[]{engine, new LazyDfaRegexEngine(1)}) {
+            final var matcher = streamEngine.compile(regex).streamMatcher();
+            final var buffer = ByteBuffer.wrap(sherlock);
+            for (int i = 0; i < 100_000; i += 60) {
+                var status = StreamMatcher.Status.UNDECIDED;
+                for (int offset = i; offset < i + 60; offset += 7) {
+                    buffer.limit(Math.min(offset + 7, i + 60)).position(offset);
+                    status = matcher.feed(buffer);
+                    assertEquals(buffer.limit(), buffer.position());
+                }
+                final var expected = javaEngine.matches(regex, Arrays.copyOfRange(sherlock, i, i + 60));
+                assertEquals(expected, matcher.finish());
+                assertNotEquals(expected ? StreamMatcher.Status.NO_MATCH : StreamMatcher.Status.MATCH, status);
+            }
+        }
+    }
+
+    @Test
+    public void countingDeadTest() {
+        // Every counter value exceeds the maximum after the fifth byte, which leads to the dead state
+        final var matcher = engine.compile(Utils.toBytes("[0-9a-fA-F]{1,4}:[ab]{1,255}")).streamMatcher();
+        assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes("ffff"))));
+        assertEquals(StreamMatcher.Status.NO_MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("f"))));
+        assertFalse(matcher.finish());
+        assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes("f:" + "ab".repeat(127)))));
+        assertEquals(StreamMatcher.Status.NO_MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("ab"))));
+        assertFalse(matcher.finish());
+    }
+
+    @Test
+    public void streamingEarlyResultTest() {
+        final var matcher = engine.compile(Utils.toBytes("ab.*")).streamMatcher();
+        assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes("a"))));
+        assertEquals(StreamMatcher.Status.MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("bc"))));
+        assertTrue(matcher.finish());
+        assertEquals(StreamMatcher.Status.NO_MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("ac"))));
+        assertEquals(StreamMatcher.Status.NO_MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("ab"))));
+        assertFalse(matcher.finish());
+        assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes("a"))));
+        assertFalse(matcher.finish());
+    }
+}
@@ -0,0 +1,85 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.CompiledRegex;
+import syspro.tm.RecordBatch;
+import syspro.tm.Utils;
+import syspro.tm.engine.NativeCompilationService;
+import syspro.tm.engine.NativeRegexEngine;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NativeEngineTest {
+    private final NativeRegexEngine engine = new NativeRegexEngine();
+
+    @Test
+    public void backgroundCompilationTest() {
+        final var javaEngine = new JavaRegexEngine();
+        final var service = new NativeCompilationService(1);
+        final var backgroundEngine = new NativeRegexEngine(service);
+        final var input = Utils.toBytes("Mr. Sherlock Holmes, who was usually very late in the mornings");
+        final var regexes = new String[]{".*Holmes.*", ".*[a-zA-Z]+ings", "[^x]*", "Holmes"};
+        final var compiled = new ArrayList<CompiledRegex>();
+        for (final var regex : regexes) {
+            compiled.add(backgroundEngine.compile(Utils.toBytes(regex)));
+        }
+        // Whichever tier each pattern is on, the results are the same
+        for (int i = 0; i < regexes.length; i++) {
+            assertEquals(javaEngine.matches(Utils.toBytes(regexes[i]), input), compiled.get(i).matches(input));
+        }
+
+        service.close();
+        final var metrics = service.metrics();
+        assertEquals(0, metrics.queueDepth);
+        assertEquals(0, metrics.activeCompiles);
+        // Libraries compiled by other tests are used right away
+        assertTrue(metrics.completedCompiles + metrics.failedCompiles <= regexes.length);
+        assertTrue(metrics.fallbackHits <= regexes.length);
+        for (int i = 0; i < regexes.length; i++) {
+            assertEquals(javaEngine.matches(Utils.toBytes(regexes[i]), input), compiled.get(i).matches(input));
+        }
+        if (metrics.failedCompiles == 0) {
+            // Every pattern has switched to its library
+            assertEquals(metrics.fallbackHits, service.metrics().fallbackHits);
+        }
+    }
+
+    @Test
+    public void batchBoundsTest() {
+        final var compiled = engine.compile(Utils.toBytes("ab"));
+        final var batch = new RecordBatch(Utils.toBytes("abxab"), new int[]{0, 2, 3, 5});
+        final var results = new long[1];
+        assertEquals(2, compiled.matchBatch(batch, results));
+        // Offsets changed after the batch was checked never reach the native code
+        batch.offsets[3] = 6;
+        assertThrows(IllegalArgumentException.class, () -> compiled.matchBatch(batch, results));
+        batch.offsets[3] = 5;
+        batch.offsets[1] = 4;
+        assertThrows(IllegalArgumentException.class, () -> compiled.matchBatch(batch, results));
+    }
+
+    @Test
+    public void windowsBoundsTest() {
+        final var compiled = engine.compile(Utils.toBytes("ab"));
+        final var input = Utils.toBytes("ab".repeat(65));
+        final var results = new long[2];
+        assertEquals(65, compiled.matchWindows(input, 2, results));
+        assertThrows(IllegalArgumentException.class, () -> compiled.matchWindows(input, 2, new long[1]));
+    }
+
+    @Test
+    public void fallbackHitsTest() {
+        // A closed service never compiles, every call stays on the table-driven DFA.
+        // The pattern is not used elsewhere, so that no library of it has been loaded already
+        final var service = new NativeCompilationService(1);
+        service.close();
+        final var compiled = new NativeRegexEngine(service).compile(Utils.toBytes("[^w]*v?"));
+        final var batch = new RecordBatch(Utils.toBytes("abxab"), new int[]{0, 2, 3, 5, 5});
+        assertEquals(4, compiled.matchBatch(batch, new long[1]));
+        assertEquals(4, service.metrics().fallbackHits);
+        assertEquals(2, compiled.matchWindows(Utils.toBytes("abxa"), 2, new long[1]));
+        assertEquals(6, service.metrics().fallbackHits);
+    }
+}
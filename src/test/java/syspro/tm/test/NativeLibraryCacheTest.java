@@ -0,0 +1,112 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import syspro.tm.jit.NativeLibraryCache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NativeLibraryCacheTest {
+    @TempDir
+    Path directory;
+
+    private static NativeLibraryCache.Compiler writing(int size, AtomicInteger runs) {
+        return workDirectory -> {
+            runs.incrementAndGet();
+            final var output = workDirectory.resolve("library.so");
+            Files.write(output, new byte[size]);
+            return output;
+        };
+    }
+
+    @Test
+    public void keyTest() {
+        assertEquals(NativeLibraryCache.key(List.of("g++", "int x;")), NativeLibraryCache.key(List.of("g++", "int x;")));
+        assertNotEquals(NativeLibraryCache.key(List.of("g++", "int x;")), NativeLibraryCache.key(List.of("g++ ", "int x;")));
+        assertNotEquals(NativeLibraryCache.key(List.of("ab", "c")), NativeLibraryCache.key(List.of("a", "bc")));
+    }
+
+    @Test
+    public void reuseTest() throws IOException, InterruptedException {
+        final var cache = new NativeLibraryCache(directory, 1024);
+        final var runs = new AtomicInteger();
+        final var first = cache.get("a", ".so", writing(10, runs));
+        final var second = cache.get("a", ".so", writing(10, runs));
+        assertEquals(first, second);
+        assertEquals(1, runs.get());
+        assertEquals(directory.resolve("a.so"), first);
+        // Nothing but the library is left behind
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(first), files.toList());
+        }
+    }
+
+    @Test
+    public void failedCompilationTest() throws IOException, InterruptedException {
+        final var cache = new NativeLibraryCache(directory, 1024);
+        assertNull(cache.get("a", ".so", _ -> null));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void evictionTest() throws IOException, InterruptedException {
+        final var cache = new NativeLibraryCache(directory, 250);
+        final var runs = new AtomicInteger();
+        final var a = cache.get("a", ".so", writing(100, runs));
+        final var b = cache.get("b", ".so", writing(100, runs));
+        Files.setLastModifiedTime(a, FileTime.fromMillis(1_000));
+        Files.setLastModifiedTime(b, FileTime.fromMillis(2_000));
+        // A hit makes the library the most recently used one
+        cache.get("a", ".so", writing(100, runs));
+        final var c = cache.get("c", ".so", writing(100, runs));
+        assertEquals(3, runs.get());
+        assertTrue(Files.exists(a));
+        assertFalse(Files.exists(b));
+        assertTrue(Files.exists(c));
+    }
+
+    @Test
+    public void privateDirectoryTest() throws IOException, InterruptedException {
+        final var posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        final var runs = new AtomicInteger();
+        final var nested = directory.resolve("cache").resolve("libraries");
+        new NativeLibraryCache(nested, 1024).get("a", ".so", writing(10, runs));
+        assertEquals(1, runs.get());
+        if (!posix) {
+            return;
+        }
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(nested)));
+
+        // Anyone could have planted a library in a directory that others may write to
+        final var shared = Files.createDirectory(directory.resolve("shared"));
+        Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxrwxrwx"));
+        assertThrows(IOException.class, () -> new NativeLibraryCache(shared, 1024).get("a", ".so", writing(10, runs)));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void linkedLibraryTest() throws IOException, InterruptedException {
+        final var cache = new NativeLibraryCache(directory.resolve("cache"), 1024);
+        final var runs = new AtomicInteger();
+        cache.get("b", ".so", writing(10, runs));
+        final var elsewhere = Files.write(directory.resolve("elsewhere.so"), new byte[20]);
+        Files.createSymbolicLink(directory.resolve("cache").resolve("a.so"), elsewhere);
+        // A link is not a hit, the library is compiled again in its place
+        final var library = cache.get("a", ".so", writing(10, runs));
+        assertEquals(2, runs.get());
+        assertTrue(Files.isRegularFile(library, LinkOption.NOFOLLOW_LINKS));
+        assertEquals(10, Files.size(library));
+        assertEquals(20, Files.size(elsewhere));
+    }
+}
@@ -0,0 +1,83 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.StreamMatcher;
+import syspro.tm.Utils;
+import syspro.tm.engine.PikeVmRegexEngine;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PikeVmEngineTest {
+    private final PikeVmRegexEngine engine = new PikeVmRegexEngine();
+
+    private boolean matches(String regex, String input) {
+        return engine.matches(Utils.toBytes(regex), Utils.toBytes(input));
+    }
+
+    @Test
+    public void basicTest() {
+        assertTrue(matches("a[bB][0-9]\\d\\w?.\\s", "aB42_\n\f"));
+        assertFalse(matches("a[bB][0-9]\\d\\w?", "aB42-"));
+    }
+
+    @Test
+    public void pathologicalTest() {
+        assertFalse(matches("(a+)+", "a".repeat(10_000) + '!'));
+        assertTrue(matches("(a?){30}a{30}", "a".repeat(30)));
+        assertFalse(matches("(x+x+)+y", "x".repeat(5_000)));
+    }
+
+    @Test
+    public void countingTest() {
+        assertTrue(matches("[0-9a-fA-F]{1,4}:[ab]{1,255}", "fE0:" + "ab".repeat(127) + 'a'));
+        assertFalse(matches("[0-9a-fA-F]{1,4}:[ab]{1,255}", "fE0:" + "ab".repeat(128)));
+        assertFalse(matches("[0-9a-fA-F]{1,4}:[ab]{1,255}", "fE01a:b"));
+        assertTrue(matches("(x.{0,1000}y)*", "x" + "-".repeat(1000) + "yxy"));
+        assertFalse(matches("(x.{0,1000}y)*", "x" + "-".repeat(1001) + "yxy"));
+        assertTrue(matches("a{70,}b", "a".repeat(100) + 'b'));
+        assertFalse(matches("a{70,}b", "a".repeat(69) + 'b'));
+    }
+
+    @Test
+    public void streamingTest() {
+        final var matcher = engine.compile(Utils.toBytes("[0-9a-fA-F]{1,4}:[ab]{1,255}")).streamMatcher();
+        for (int i = 0; i < 127; i++) {
+            assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes(i == 0 ? "fE0:ab" : "ab"))));
+        }
+        assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes("a"))));
+        assertTrue(matcher.finish());
+        assertEquals(StreamMatcher.Status.NO_MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("fE01a:"))));
+        assertFalse(matcher.finish());
+
+        final var universal = engine.compile(Utils.toBytes("x.*")).streamMatcher();
+        assertEquals(StreamMatcher.Status.UNDECIDED, universal.feed(ByteBuffer.allocateDirect(0)));
+        assertEquals(StreamMatcher.Status.MATCH, universal.feed(ByteBuffer.wrap(Utils.toBytes("x-")).asReadOnlyBuffer()));
+        assertTrue(universal.finish());
+    }
+
+    @Test
+    public void countingDeadTest() {
+        // Every counter value exceeds the maximum after the fifth byte, the thread list becomes empty
+        final var matcher = engine.compile(Utils.toBytes("[0-9a-fA-F]{1,4}")).streamMatcher();
+        assertEquals(StreamMatcher.Status.UNDECIDED, matcher.feed(ByteBuffer.wrap(Utils.toBytes("ffff"))));
+        assertEquals(StreamMatcher.Status.NO_MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("f"))));
+        assertFalse(matcher.finish());
+        assertEquals(StreamMatcher.Status.NO_MATCH, matcher.feed(ByteBuffer.wrap(Utils.toBytes("f".repeat(100)))));
+        assertFalse(matcher.finish());
+        assertFalse(matches("[0-9a-fA-F]{1,4}", "f".repeat(1_000_000)));
+    }
+
+    @Test
+    public void regexSetTest() {
+        final var regexSet = engine.compileSet(Utils.toBytes("a.*"), Utils.toBytes(".*b"), Utils.toBytes("[a-c]{2,10}"), Utils.toBytes("a.*"));
+        assertEquals(4, regexSet.size());
+        assertEquals(BitSet.valueOf(new long[]{0b1111}), regexSet.matches(Utils.toBytes("acb")));
+        assertEquals(BitSet.valueOf(new long[]{0b1001}), regexSet.matches(Utils.toBytes("a")));
+        assertEquals(BitSet.valueOf(new long[]{0b0010}), regexSet.matches(Utils.toBytes("xb")));
+        assertEquals(new BitSet(), regexSet.matches(Utils.toBytes("bax")));
+        assertEquals(0, engine.compileSet().size());
+    }
+}
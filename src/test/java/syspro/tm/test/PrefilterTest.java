@@ -0,0 +1,219 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.Configuration;
+import syspro.tm.DefaultTestCases;
+import syspro.tm.Utils;
+import syspro.tm.engine.LiteralAnalysis;
+import syspro.tm.engine.Prefilter;
+import syspro.tm.regex.Regex;
+import syspro.tm.regex.RegexSimplifier;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrefilterTest {
+    private static LiteralAnalysis.Literals analyze(String regex) {
+        return LiteralAnalysis.analyze(RegexSimplifier.simplify(Regex.parse(regex)));
+    }
+
+    private static Prefilter prefilter(String regex) {
+        return Prefilter.of(RegexSimplifier.simplify(Regex.parse(regex)));
+    }
+
+    private static boolean mayMatch(String regex, String input) {
+        final var prefilter = prefilter(regex);
+        return prefilter == null || prefilter.mayMatch(Utils.toBytes(input));
+    }
+
+    @Test
+    public void prefixTest() {
+        final var literals = analyze("Holmes.*");
+        assertNull(literals.exact);
+        assertEquals(Set.of("Holmes"), literals.prefixes);
+        assertTrue(LiteralAnalysis.Literals.isTrivial(literals.suffixes));
+        assertTrue(mayMatch("Holmes.*", "Holmes, Sherlock"));
+        assertTrue(mayMatch("Holmes.*", "Holmes"));
+        assertFalse(mayMatch("Holmes.*", "Sherlock Holmes"));
+        assertFalse(mayMatch("Holmes.*", "Holme"));
+    }
+
+    @Test
+    public void suffixTest() {
+        final var literals = analyze(".*[a-z]ing");
+        assertEquals(Set.of("ing"), literals.suffixes);
+        assertTrue(LiteralAnalysis.Literals.isTrivial(literals.prefixes));
+        assertTrue(mayMatch(".*[a-z]ing", "morning"));
+        assertFalse(mayMatch(".*[a-z]ing", "ingot"));
+        assertFalse(mayMatch(".*[a-z]ing", "ng"));
+    }
+
+    @Test
+    public void innerTest() {
+        final var literals = analyze(".*Holmes.*");
+        assertEquals(Set.of("Holmes"), literals.inner);
+        assertTrue(LiteralAnalysis.Literals.isTrivial(literals.prefixes));
+        assertTrue(LiteralAnalysis.Literals.isTrivial(literals.suffixes));
+        assertTrue(mayMatch(".*Holmes.*", "Mr. Holmes!"));
+        assertTrue(mayMatch(".*Holmes.*", "Holmes"));
+        assertFalse(mayMatch(".*Holmes.*", "Mr. Holme s"));
+
+        // Literals followed by a small class are expanded into all combinations
+        assertEquals(Set.of(" Holmes,", " Holmes."), analyze(".*[a-z]+ Holmes[,.].*").inner);
+        assertTrue(mayMatch(".*[a-z]+ Holmes[,.].*", "Mr. Holmes."));
+        assertFalse(mayMatch(".*[a-z]+ Holmes[,.].*", "Mr. Holmes!"));
+    }
+
+    @Test
+    public void alternationTest() {
+        assertEquals(Set.of("Holmes", "Watson"), analyze("(Holmes|Watson).*").prefixes);
+        assertEquals(Set.of("cat", "dog"), analyze(".*(cat|dog).*").inner);
+        assertEquals(Set.of("ab", "cd", "e"), analyze("ab|cd|e").exact);
+        assertTrue(mayMatch(".*(cat|dog).*", "hotdogs"));
+        assertTrue(mayMatch(".*(cat|dog).*", "catalog"));
+        assertFalse(mayMatch(".*(cat|dog).*", "cow"));
+
+        // An option without literals makes the whole alternation trivial
+        final var literals = analyze("(Holmes|[a-z]+).*");
+        assertTrue(LiteralAnalysis.Literals.isTrivial(literals.prefixes));
+        assertNull(prefilter("(Holmes|[a-z]+).*"));
+    }
+
+    @Test
+    public void emptyLanguageTest() {
+        // Matches nothing at all, not even the empty string
+        assertEquals(Set.of(), analyze("[^\\s\\S]").exact);
+        assertFalse(mayMatch("[^\\s\\S]", ""));
+        assertFalse(mayMatch("[^\\s\\S]", "a"));
+        assertFalse(mayMatch("a[^\\s\\S]b", "ab"));
+        // The empty option adds nothing to an alternation
+        assertEquals(Set.of("x"), analyze("x|[^\\s\\S]").exact);
+        assertTrue(mayMatch("x|[^\\s\\S]", "x"));
+        // Zero repetitions of it are the empty string
+        assertTrue(mayMatch("[^\\s\\S]*", ""));
+        assertTrue(mayMatch("a[^\\s\\S]*", "a"));
+    }
+
+    @Test
+    public void repetitionTest() {
+        assertEquals(Set.of("aa", "aaa"), analyze("a{2,3}").exact);
+        assertEquals(Set.of("", "ab", "abab"), analyze("(ab){0,2}").exact);
+        // Exactly the size and length limits
+        assertEquals(LiteralAnalysis.MAX_SET_SIZE, analyze("[ab]{4}").exact.size());
+        assertEquals(Set.of("a".repeat(LiteralAnalysis.MAX_LITERAL_LENGTH)), analyze("a{" + LiteralAnalysis.MAX_LITERAL_LENGTH + "}").exact);
+        // Over the limits: no exact set, but still the literals of every repetition
+        final var tooMany = analyze("[ab]{5}");
+        assertNull(tooMany.exact);
+        assertEquals(Set.of("a", "b"), tooMany.prefixes);
+        assertNull(analyze("a{" + (LiteralAnalysis.MAX_LITERAL_LENGTH + 1) + "}").exact);
+        assertTrue(mayMatch("x{70}", "x".repeat(70)));
+        assertFalse(mayMatch("x{70}", "y".repeat(70)));
+
+        // Unbounded repetitions keep the literals of their argument unless they may be skipped
+        assertEquals(Set.of("ab"), analyze("(ab)+").prefixes);
+        assertEquals(Set.of("ab"), analyze("(ab)+").suffixes);
+        assertNull(prefilter("(ab)*"));
+        assertTrue(mayMatch("(ab)+", "abab"));
+        assertFalse(mayMatch("(ab)+", "aba"));
+    }
+
+    @Test
+    public void rangeTest() {
+        final var input = Utils.toBytes("xxHolmesyy");
+        final var exact = prefilter("Holmes");
+        assertTrue(exact.mayMatch(input, 2, 8));
+        assertFalse(exact.mayMatch(input, 1, 8));
+        assertFalse(exact.mayMatch(input, 2, 9));
+        assertFalse(exact.mayMatch(input, 2, 7));
+
+        final var prefix = prefilter("Holmes.*");
+        assertTrue(prefix.mayMatch(input, 2, 10));
+        assertFalse(prefix.mayMatch(input, 0, 10));
+        assertFalse(prefix.mayMatch(input, 2, 5));
+
+        final var suffix = prefilter(".*Holmes");
+        assertTrue(suffix.mayMatch(input, 0, 8));
+        assertFalse(suffix.mayMatch(input, 0, 10));
+        assertFalse(suffix.mayMatch(input, 5, 8));
+
+        final var inner = prefilter(".*Holmes.*");
+        assertTrue(inner.mayMatch(input, 2, 8));
+        assertTrue(inner.mayMatch(input, 0, 10));
+        assertFalse(inner.mayMatch(input, 0, 7));
+        assertFalse(inner.mayMatch(input, 3, 10));
+        assertFalse(inner.mayMatch(input, 4, 4));
+    }
+
+    @Test
+    public void configuredSoundnessTest() {
+        final var javaEngine = new JavaRegexEngine();
+        final var sherlock = DefaultTestCases.loadSherlockBytes();
+        for (final var data : Configuration.testData()) {
+            final var regex = Utils.toJavaString(data.regex);
+            final var searched = data.search ? ".*(" + regex + ").*" : regex;
+            final var prefilter = prefilter(searched);
+            if (prefilter == null) {
+                continue;
+            }
+            assertMaySatisfy(javaEngine, searched, prefilter, data.input);
+            for (int i = 0; i < 20_000; i += 40) {
+                assertMaySatisfy(javaEngine, searched, prefilter, Arrays.copyOfRange(sherlock, i, i + 40));
+            }
+        }
+    }
+
+    @Test
+    public void randomSoundnessTest() {
+        final var javaEngine = new JavaRegexEngine();
+        final var random = new Random(42);
+        for (int i = 0; i < 2_000; i++) {
+            final var regex = randomRegex(random, 4);
+            final var prefilter = prefilter(regex);
+            if (prefilter == null) {
+                continue;
+            }
+            for (int j = 0; j < 50; j++) {
+                final var input = new byte[random.nextInt(10)];
+                for (int k = 0; k < input.length; k++) {
+                    input[k] = (byte) ("abcd".charAt(random.nextInt(4)));
+                }
+                assertMaySatisfy(javaEngine, regex, prefilter, input);
+            }
+        }
+    }
+
+    /**
+     * Asserts that the prefilter does not reject an input matched by the regex, neither on its own
+     * nor as a range of a larger array.
+     */
+    private static void assertMaySatisfy(JavaRegexEngine javaEngine, String regex, Prefilter prefilter, byte[] input) {
+        if (!javaEngine.matches(Utils.toBytes(regex), input)) {
+            return;
+        }
+        final var message = regex + " on " + Utils.toJavaString(input);
+        assertTrue(prefilter.mayMatch(input), message);
+        final var padded = new byte[input.length + 6];
+        Arrays.fill(padded, (byte) 'a');
+        System.arraycopy(input, 0, padded, 3, input.length);
+        assertTrue(prefilter.mayMatch(padded, 3, 3 + input.length), message);
+    }
+
+    private static String randomRegex(Random random, int depth) {
+        final var choice = random.nextInt(depth == 0 ? 4 : 9);
+        return switch (choice) {
+            case 0, 1 -> String.valueOf("abcd".charAt(random.nextInt(4)));
+            case 2 -> random.nextBoolean() ? "[ab]" : "[^a]";
+            case 3 -> random.nextBoolean() ? "." : "[^\\s\\S]";
+            case 4, 5 -> randomRegex(random, depth - 1) + randomRegex(random, depth - 1);
+            case 6 -> "(" + randomRegex(random, depth - 1) + "|" + randomRegex(random, depth - 1) + ")";
+            case 7 -> "(" + randomRegex(random, depth - 1) + ")" + "*+?".charAt(random.nextInt(3));
+            default -> {
+                final var min = random.nextInt(3);
+                yield "(" + randomRegex(random, depth - 1) + "){" + min + "," + (min + 1 + random.nextInt(3)) + "}";
+            }
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import syspro.tm.regex.Regex;
+import syspro.tm.regex.RegexSimplifier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegexSimplifierTest {
+    @ParameterizedTest
+    @CsvSource(delimiter = ' ', value = {
+            "(([a]*)?)* a*",
+            "((a*|b*))* [ab]*",
+            "((((((((((x)))))))))) x",
+            "((a+)+)+b a+b",
+            "(x+)? x*",
+            "(x{2}){3} x{6,6}",
+            "(a?|bc)+ (a|bc)*",
+            "(a|b)c [ab]c",
+            "ab|ac|d|e a[bc]|[de]",
+            "a|ab|abc a(bc?)?",
+            "(a|) a?",
+    })
+    public void simplifyTest(String regex, String expected) {
+        final var simplified = RegexSimplifier.simplify(Regex.parse(regex));
+        assertEquals(expected, simplified.toString());
+        assertEquals(simplified, RegexSimplifier.simplify(simplified));
+    }
+}
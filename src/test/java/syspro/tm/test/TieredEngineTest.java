@@ -0,0 +1,87 @@
+package syspro.tm.test;
+
+import org.junit.jupiter.api.Test;
+import syspro.tm.DefaultTestCases;
+import syspro.tm.RecordBatch;
+import syspro.tm.Utils;
+import syspro.tm.engine.TieredRegexEngine;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TieredEngineTest {
+    @Test
+    public void promotionTest() {
+        final var compiles = new ArrayList<Runnable>();
+        final var compiled = new TieredRegexEngine(2, 5, Long.MAX_VALUE, null, compiles::add).compile(Utils.toBytes(".*Holmes.*"));
+        final var input = Utils.toBytes("Sherlock Holmes");
+        assertEquals("Pike VM", compiled.tierHistory());
+        assertTrue(compiled.matches(input));
+        assertEquals("Pike VM", compiled.tierHistory());
+        assertTrue(compiled.matches(input));
+        assertEquals("Pike VM → lazy DFA at call 2 (30 bytes)", compiled.tierHistory());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(compiled.matches(input));
+        }
+        // The lazy DFA keeps matching until the bytecode is ready, which is requested once
+        assertEquals(1, compiles.size());
+        assertTrue(compiled.matches(input));
+        assertFalse(compiled.matches(Utils.toBytes("Sherlock Holme$")));
+        assertEquals(1, compiles.size());
+        assertEquals("Pike VM → lazy DFA at call 2 (30 bytes)", compiled.tierHistory());
+        compiles.removeFirst().run();
+        assertEquals("Pike VM → lazy DFA at call 2 (30 bytes) → bytecode at call 5 (75 bytes)", compiled.tierHistory());
+        assertTrue(compiled.matches(input));
+        assertTrue(compiles.isEmpty());
+
+        // Inputs rejected by the prefilter are not counted
+        final var rejected = new TieredRegexEngine(2, 5, Long.MAX_VALUE, null, Runnable::run).compile(Utils.toBytes(".*Holmes.*"));
+        for (int i = 0; i < 10; i++) {
+            assertFalse(rejected.matches(Utils.toBytes("Sherlock")));
+        }
+        assertEquals("Pike VM", rejected.tierHistory());
+        assertTrue(rejected.matches(input));
+        assertTrue(rejected.matches(input));
+        assertEquals("Pike VM → lazy DFA at call 2 (30 bytes)", rejected.tierHistory());
+    }
+
+    @Test
+    public void bytesPromotionTest() {
+        final var compiled = new TieredRegexEngine(100, 100, 1000, null, Runnable::run).compile(Utils.toBytes(".*Holmes.*"));
+        final var input = new byte[2000];
+        final var holmes = Utils.toBytes("Holmes");
+        System.arraycopy(holmes, 0, input, 1000, holmes.length);
+        assertTrue(compiled.matches(input));
+        // Reaching the compiled tier threshold on the Pike VM passes through the lazy DFA
+        assertEquals("Pike VM → lazy DFA at call 1 (2000 bytes) → bytecode at call 1 (2000 bytes)", compiled.tierHistory());
+    }
+
+    @Test
+    public void batchTest() {
+        final var javaEngine = new JavaRegexEngine();
+        final var sherlock = DefaultTestCases.loadSherlockBytes();
+        final var offsets = new int[2001];
+        offsets[0] = 7;
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] = offsets[i - 1] + i % 97;
+        }
+        final var batch = new RecordBatch(sherlock, offsets);
+        for (final var regex : new String[]{".*Holmes.*", ".*[a-zA-Z]+ing.*", "[^x]*"}) {
+            final var expected = javaEngine.compile(Utils.toBytes(regex)).matchBatch(batch);
+            final var compiled = new TieredRegexEngine(10, 2500, Long.MAX_VALUE, null, Runnable::run).compile(Utils.toBytes(regex));
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected, compiled.matchBatch(batch));
+            }
+        }
+
+        // Records are counted one by one until the compiled tier matches whole batches
+        final var compiled = new TieredRegexEngine(10, 2500, Long.MAX_VALUE, null, Runnable::run).compile(Utils.toBytes("[^x]*"));
+        compiled.matchBatch(batch);
+        final var lazyDfa = "Pike VM → lazy DFA at call 10 (" + (offsets[10] - offsets[0]) + " bytes)";
+        assertEquals(lazyDfa, compiled.tierHistory());
+        compiled.matchBatch(batch);
+        final var bytes = offsets[2000] - offsets[0] + offsets[500] - offsets[0];
+        assertEquals(lazyDfa + " → bytecode at call 2500 (" + bytes + " bytes)", compiled.tierHistory());
+    }
+}